@@ -0,0 +1,101 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.event.api.EventReceiver;
+import org.jocean.idiom.ExectionLoop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * single producer push events into one flow, measured end to end 
+ *  (every event of invocation has been dispatched when invocation return).
+ *  
+ * loop:        immediate: ExectionLoop.immediateLoop, dispatch inline in producer thread
+ *              pool: single thread pool, dispatch in another thread
+ * ringSize:    0: linked mailbox, otherwise ring mailbox (producer block when ring is full)
+ * 
+ * allocation per event: gradle jmh -PjmhArgs="AcceptEventBenchmark -prof gc", see gc.alloc.rate.norm
+ * 
+ * @author isdom
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AcceptEventBenchmark {
+    
+    static final int EVENTS_PER_INVOCATION = 1000;
+    
+    @Param({"immediate", "pool"})
+    public String loop;
+    
+    @Param({"0", "1024"})
+    public int ringSize;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        final ExectionLoop exectionLoop;
+        if ("pool".equals(this.loop)) {
+            this._poolLoop = new ExecutorExectionLoop(Executors.newSingleThreadExecutor());
+            exectionLoop = this._poolLoop;
+        }
+        else {
+            exectionLoop = ExectionLoop.immediateLoop;
+        }
+        
+        final FlowContainer container = new FlowContainer("bench");
+        if (this.ringSize > 0) {
+            container.setMailboxRingSize(this.ringSize);
+            container.setMailboxCapacity(this.ringSize);
+            container.setOverflowPolicy(OverflowPolicy.BLOCK, 1000L);
+        }
+        this._flow = new BenchFlow();
+        this._receiver = container.buildEventEngine(exectionLoop)
+                .create("bench", this._flow.RUNNING, this._flow);
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        this._receiver.acceptEvent("end");
+        if (null != this._poolLoop) {
+            this._poolLoop.shutdown();
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(EVENTS_PER_INVOCATION)
+    public void acceptEvent() throws Exception {
+        for (int idx = 0; idx < EVENTS_PER_INVOCATION; idx++) {
+            this._receiver.acceptEvent("tick");
+        }
+        this._sent += EVENTS_PER_INVOCATION;
+        while (this._flow.handled() < this._sent) {
+            Thread.yield();
+        }
+    }
+    
+    private ExecutorExectionLoop _poolLoop;
+    private BenchFlow _flow;
+    private EventReceiver _receiver;
+    private long _sent = 0;
+}
@@ -0,0 +1,61 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jocean.event.api.AbstractFlow;
+import org.jocean.event.api.BizStep;
+import org.jocean.event.api.annotation.OnEvent;
+
+/**
+ * flow used by benchmarks:
+ *  tick:   count and stay in RUNNING
+ *  block:  sleep 1ms (simulate blocking call), then count to shared counter
+ *  end:    end flow
+ *  
+ * @author isdom
+ *
+ */
+public class BenchFlow extends AbstractFlow<BenchFlow> {
+    
+    public BenchFlow() {
+        this(null);
+    }
+    
+    public BenchFlow(final AtomicLong blockedCounter) {
+        this._blockedCounter = blockedCounter;
+    }
+    
+    /**
+     * @return count of tick handled, written by dispatch thread only
+     */
+    public long handled() {
+        return this._handled;
+    }
+    
+    final BizStep RUNNING = new BizStep("RUNNING") {
+                @OnEvent(event="tick")
+                BizStep onTick() {
+                    _handled++;
+                    return BizStep.CURRENT_BIZSTEP;
+                }
+                
+                @OnEvent(event="block")
+                BizStep onBlock() throws InterruptedException {
+                    Thread.sleep(1L);
+                    _blockedCounter.incrementAndGet();
+                    return BizStep.CURRENT_BIZSTEP;
+                }
+                
+                @OnEvent(event="end")
+                BizStep onEnd() {
+                    return null;
+                }
+            }
+            .freeze();
+    
+    private final AtomicLong _blockedCounter;
+    private volatile long _handled = 0;
+}
@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jocean.event.api.EventEngine;
+import org.jocean.event.api.EventReceiver;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * FLOWS flows each handle one event which block 1ms, 
+ *  measured until all of them handled.
+ *  
+ * loop:    virtual: VirtualThreadExectionLoop (fallback to bounded platform threads before JDK 21)
+ *          pool: fixed thread pool of POOL_THREADS platform threads
+ *  
+ * footprint sampled while events blocking, reported as secondary results (see Footprint),
+ *  with allocation: gradle jmh -PjmhArgs="BlockingHandlerBenchmark -prof gc"
+ *  
+ * @author isdom
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class BlockingHandlerBenchmark {
+    
+    static final int FLOWS = 100000;
+    static final int POOL_THREADS = 200;
+    
+    @Param({"virtual", "pool"})
+    public String loop;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        final FlowContainer container = new FlowContainer("bench");
+        final EventEngine engine;
+        if ("pool".equals(this.loop)) {
+            this._poolLoop = new ExecutorExectionLoop(
+                    Executors.newFixedThreadPool(POOL_THREADS));
+            engine = container.buildEventEngine(this._poolLoop);
+        }
+        else {
+            engine = container.buildVirtualThreadEventEngine();
+        }
+        for (int idx = 0; idx < FLOWS; idx++) {
+            final BenchFlow flow = new BenchFlow(this._blocked);
+            this._receivers[idx] = engine.create("blocking", flow.RUNNING, flow);
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        for (EventReceiver receiver : this._receivers) {
+            receiver.acceptEvent("end");
+        }
+        if (null != this._poolLoop) {
+            this._poolLoop.shutdown();
+        }
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(FLOWS)
+    public void blockingEvents(final Footprint footprint) throws Exception {
+        for (EventReceiver receiver : this._receivers) {
+            receiver.acceptEvent("block");
+        }
+        this._sent += FLOWS;
+        while (this._blocked.get() < this._sent) {
+            footprint.sample();
+            Thread.sleep(1L);
+        }
+    }
+    
+    /**
+     * max footprint in iteration, sampled while events blocking:
+     *  threads:    live platform threads (virtual threads are not counted)
+     *  heapUsedMB: used heap (include garbage not yet collected)
+     */
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    @State(Scope.Thread)
+    public static class Footprint {
+        
+        public long threads;
+        public long heapUsedMB;
+        
+        @Setup(Level.Iteration)
+        public void reset() {
+            this.threads = 0;
+            this.heapUsedMB = 0;
+        }
+        
+        void sample() {
+            this.threads = Math.max(this.threads, THREAD_MX.getThreadCount());
+            this.heapUsedMB = Math.max(this.heapUsedMB, 
+                    MEMORY_MX.getHeapMemoryUsage().getUsed() >> 20);
+        }
+        
+        private static final ThreadMXBean THREAD_MX = ManagementFactory.getThreadMXBean();
+        private static final MemoryMXBean MEMORY_MX = ManagementFactory.getMemoryMXBean();
+    }
+    
+    private ExecutorExectionLoop _poolLoop;
+    private final EventReceiver[] _receivers = new EventReceiver[FLOWS];
+    private final AtomicLong _blocked = new AtomicLong(0);
+    private long _sent = 0;
+}
@@ -0,0 +1,110 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * multi producers (4 threads, override by -t) push events into one flow dispatched by single thread pool,
+ *  mailbox capacity bounded with OverflowPolicy.BLOCK, so producers are throttled by the dispatcher 
+ *  instead of growing mailbox without limit.
+ * 
+ * mailbox:         linked: LinkedFlowMailbox, ring: RingFlowMailbox (ring size = capacity),
+ *                  locked: baseline before FlowMailbox, see LockedPendingQueue
+ * acceptEvent:     one event per call
+ * acceptEvents:    BATCH events per call via BatchEventReceiver (enqueued atomically, flow scheduled once),
+ *                  baseline has no batch, push BATCH events one by one
+ * 
+ * @author isdom
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class ContendedAcceptEventBenchmark {
+    
+    static final int BATCH = 16;
+    static final int CAPACITY = 65536;
+    
+    @Param({"linked", "ring", "locked"})
+    public String mailbox;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        this._loop = new ExecutorExectionLoop(Executors.newSingleThreadExecutor());
+        this._flow = new BenchFlow();
+        if ("locked".equals(this.mailbox)) {
+            this._locked = new LockedPendingQueue(this._loop, this._flow.RUNNING, CAPACITY, 1000L);
+        }
+        else {
+            final FlowContainer container = new FlowContainer("bench");
+            container.setMailboxRingSize("ring".equals(this.mailbox) ? CAPACITY : 0);
+            container.setMailboxCapacity(CAPACITY);
+            container.setOverflowPolicy(OverflowPolicy.BLOCK, 1000L);
+            this._receiver = (BatchEventReceiver)container.buildEventEngine(this._loop)
+                    .create("bench", this._flow.RUNNING, this._flow);
+        }
+        for (int idx = 0; idx < BATCH; idx++) {
+            this._batch[idx] = "tick";
+        }
+    }
+    
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception {
+        if (null != this._locked) {
+            this._locked.destroy();
+        }
+        else {
+            this._receiver.acceptEvent("end");
+        }
+        this._loop.shutdown();
+    }
+    
+    @Benchmark
+    public boolean acceptEvent() throws Exception {
+        return null != this._locked
+                ? this._locked.acceptEvent("tick")
+                : this._receiver.acceptEvent("tick");
+    }
+    
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public boolean[] acceptEvents() {
+        if (null != this._locked) {
+            final boolean[] accepted = new boolean[BATCH];
+            for (int idx = 0; idx < BATCH; idx++) {
+                accepted[idx] = this._locked.acceptEvent(this._batch[idx]);
+            }
+            return accepted;
+        }
+        return this._receiver.acceptEvents(this._batch, null);
+    }
+    
+    private ExecutorExectionLoop _loop;
+    private BenchFlow _flow;
+    private BatchEventReceiver _receiver;
+    private LockedPendingQueue _locked;
+    private final String[] _batch = new String[BATCH];
+}
@@ -0,0 +1,99 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.jocean.idiom.Detachable;
+import org.jocean.idiom.ExectionLoop;
+
+/**
+ * ExectionLoop base on ExecutorService, for benchmarks of thread-pool loop,
+ *  delayed runnable is timed by ScheduledExecutorService, then submitted to executor when due.
+ * 
+ * @author isdom
+ *
+ */
+public class ExecutorExectionLoop implements ExectionLoop {
+    
+    public ExecutorExectionLoop(final ExecutorService executor) {
+        this(executor, Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, "bench-loop-timer");
+                thread.setDaemon(true);
+                return thread;
+            }}));
+    }
+    
+    public ExecutorExectionLoop(final ExecutorService executor, final ScheduledExecutorService scheduler) {
+        this._executor = executor;
+        this._scheduler = scheduler;
+    }
+    
+    @Override
+    public boolean inExectionLoop() {
+        return IN_LOOP.get() == this;
+    }
+
+    @Override
+    public Detachable submit(final Runnable runnable) {
+        final Future<?> future = this._executor.submit(new Runnable() {
+            @Override
+            public void run() {
+                IN_LOOP.set(ExecutorExectionLoop.this);
+                try {
+                    runnable.run();
+                }
+                finally {
+                    IN_LOOP.remove();
+                }
+            }});
+        return new Detachable() {
+            @Override
+            public void detach() {
+                future.cancel(false);
+            }};
+    }
+
+    @Override
+    public Detachable schedule(final Runnable runnable, final long delayMillis) {
+        final AtomicBoolean canceled = new AtomicBoolean(false);
+        final ScheduledFuture<?> future = this._scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        //  detached after due
+                        if (!canceled.get()) {
+                            runnable.run();
+                        }
+                    }});
+            }}, delayMillis, TimeUnit.MILLISECONDS);
+        return new Detachable() {
+            @Override
+            public void detach() {
+                canceled.set(true);
+                future.cancel(false);
+            }};
+    }
+    
+    public void shutdown() {
+        this._scheduler.shutdownNow();
+        this._executor.shutdownNow();
+    }
+    
+    private static final ThreadLocal<ExectionLoop> IN_LOOP = new ThreadLocal<ExectionLoop>();
+    
+    private final ExecutorService _executor;
+    private final ScheduledExecutorService _scheduler;
+}
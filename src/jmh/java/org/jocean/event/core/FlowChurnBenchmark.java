@@ -0,0 +1,61 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.event.api.EventEngine;
+import org.jocean.event.api.EventReceiver;
+import org.jocean.idiom.ExectionLoop;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * create flow -> push N events -> end flow, dispatched inline by ExectionLoop.immediateLoop,
+ *  covers flow registry, reactors binding, mailbox and destroy path.
+ *  
+ * @author isdom
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FlowChurnBenchmark {
+    
+    @Param({"0", "10", "100"})
+    public int events;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        this._container = new FlowContainer("bench");
+        this._engine = this._container.buildEventEngine(ExectionLoop.immediateLoop);
+    }
+    
+    @Benchmark
+    public int createSendDestroy() throws Exception {
+        final BenchFlow flow = new BenchFlow();
+        final EventReceiver receiver = this._engine.create("churn", flow.RUNNING, flow);
+        for (int idx = 0; idx < this.events; idx++) {
+            receiver.acceptEvent("tick");
+        }
+        receiver.acceptEvent("end");
+        return this._container.getFlowTotalCount();
+    }
+    
+    private FlowContainer _container;
+    private EventEngine _engine;
+}
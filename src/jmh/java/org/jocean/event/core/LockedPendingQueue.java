@@ -0,0 +1,129 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.jocean.event.api.internal.EventHandler;
+import org.jocean.idiom.ExectionLoop;
+import org.jocean.idiom.Pair;
+
+/**
+ * pending events of flow before FlowMailbox, as baseline of ContendedAcceptEventBenchmark:
+ *  ConcurrentLinkedQueue of Pair guarded by ReentrantReadWriteLock
+ *  (read lock for push & pop, write lock for destroy), flow scheduled by AtomicBoolean actived,
+ *  and events dispatched to handler in exectionLoop.
+ *  pending events are limited by PendingLimiter with OverflowPolicy.BLOCK, same as FlowContainer's setting.
+ *
+ * @author isdom
+ *
+ */
+public class LockedPendingQueue {
+
+    public LockedPendingQueue(final ExectionLoop exectionLoop, final EventHandler handler,
+            final int capacity, final long blockTimeoutMillis) {
+        this._exectionLoop = exectionLoop;
+        this._handler = handler;
+        this._limiter = new PendingLimiter(null, capacity, OverflowPolicy.BLOCK, blockTimeoutMillis,
+                null, 0, 0, 0, null);
+    }
+
+    public boolean acceptEvent(final String event, final Object... args) {
+        if (!acquirePermit()) {
+            return false;
+        }
+        this._destroyingLock.readLock().lock();
+        try {
+            if (!this._isAlive.get()) {
+                this._limiter.release();
+                return false;
+            }
+            this._pendingEvents.add(Pair.of((Object)event, args));
+        } finally {
+            this._destroyingLock.readLock().unlock();
+        }
+        if (this._isActived.compareAndSet(false, true)) {
+            this._exectionLoop.submit(this._dispatchPendingRunnable);
+        }
+        return true;
+    }
+
+    public void destroy() {
+        this._destroyingLock.writeLock().lock();
+        try {
+            this._isAlive.set(false);
+            this._pendingEvents.clear();
+        } finally {
+            this._destroyingLock.writeLock().unlock();
+        }
+    }
+
+    private boolean acquirePermit() {
+        if (this._limiter.tryAcquire()) {
+            return true;
+        }
+        final long deadline = System.nanoTime() + this._limiter.blockTimeoutNanos();
+        do {
+            LockSupport.parkNanos(BLOCK_BACKOFF_NANOS);
+            if (this._limiter.tryAcquire()) {
+                return true;
+            }
+        } while (this._isAlive.get() && (System.nanoTime() - deadline) < 0);
+        return false;
+    }
+
+    private Pair<Object, Object[]> popPendingEvent() {
+        this._destroyingLock.readLock().lock();
+        try {
+            if (!this._isAlive.get()) {
+                return null;
+            }
+            return this._pendingEvents.poll();
+        } finally {
+            this._destroyingLock.readLock().unlock();
+        }
+    }
+
+    private void dispatchPendingEvent() {
+        for (;;) {
+            final Pair<Object, Object[]> eventAndArgs = popPendingEvent();
+            if (null == eventAndArgs) {
+                this._isActived.set(false);
+                //  event may be pushed after poll return null and before set unactived
+                if (!this._pendingEvents.isEmpty() && this._isActived.compareAndSet(false, true)) {
+                    continue;
+                }
+                return;
+            }
+            this._limiter.release();
+            try {
+                this._handler.process((String)eventAndArgs.getFirst(), eventAndArgs.getSecond());
+            } catch (Exception e) {
+                //  ignore, same as flow log and continue
+            }
+        }
+    }
+
+    private final Runnable _dispatchPendingRunnable = new Runnable() {
+        @Override
+        public void run() {
+            dispatchPendingEvent();
+        }};
+
+    private static final long BLOCK_BACKOFF_NANOS = 50000L;
+
+    private final ExectionLoop _exectionLoop;
+    private final EventHandler _handler;
+    private final PendingLimiter _limiter;
+    private final Queue<Pair<Object, Object[]>> _pendingEvents =
+            new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean _isActived = new AtomicBoolean(false);
+    private final AtomicBoolean _isAlive = new AtomicBoolean(true);
+    private final ReadWriteLock _destroyingLock = new ReentrantReadWriteLock(false);
+}
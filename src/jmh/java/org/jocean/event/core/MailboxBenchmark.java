@@ -0,0 +1,76 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.event.core.FlowMailbox.Envelope;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * enqueue/poll/release of FlowMailbox alone (no flow, no dispatch), in one thread:
+ *  each invocation offer BURST events then poll & release all of them.
+ *
+ * mailbox:     linked: LinkedFlowMailbox, allocate one node per event
+ *              ring: RingFlowMailbox, reuse its slots, SHOULD allocate nothing per event
+ *
+ * allocation per event: gradle jmh -PjmhArgs="MailboxBenchmark -prof gc", see gc.alloc.rate.norm
+ *
+ * @author isdom
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MailboxBenchmark {
+
+    static final int BURST = 64;
+
+    @Param({"linked", "ring"})
+    public String mailbox;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        this._mailbox = "ring".equals(this.mailbox)
+                ? new RingFlowMailbox(BURST)
+                : new LinkedFlowMailbox();
+        this._generation = this._mailbox.generation();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public int offerPollRelease() {
+        int polled = 0;
+        for (int idx = 0; idx < BURST; idx++) {
+            this._mailbox.offer(EVENT, ARGS, 0L, this._generation, false);
+        }
+        Envelope envelope;
+        while (null != (envelope = this._mailbox.poll())) {
+            this._mailbox.release(envelope);
+            polled++;
+        }
+        return polled;
+    }
+
+    private static final String EVENT = "tick";
+    private static final Object[] ARGS = new Object[0];
+
+    private FlowMailbox _mailbox;
+    private int _generation;
+}
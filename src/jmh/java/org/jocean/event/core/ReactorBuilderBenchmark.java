@@ -0,0 +1,145 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.TimeUnit;
+
+import org.jocean.event.api.EventEngine;
+import org.jocean.event.api.EventReceiver;
+import org.jocean.event.api.FlowLifecycleListener;
+import org.jocean.event.api.FlowStateChangedListener;
+import org.jocean.event.api.internal.EventHandler;
+import org.jocean.event.api.internal.EventHandlerAware;
+import org.jocean.event.core.FlowContext.ReactorBuilder;
+import org.jocean.idiom.ExectionLoop;
+import org.jocean.idiom.InterfaceUtils;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * overhead of ReactorBuilder added to FlowContainer: 
+ *  each flow run builders (ReactorPlan.compose), then bind all reactors by ReactorShape.
+ *  compare with builders == 0.
+ *  
+ * createAndEnd:            flow is created and ended immediately
+ * createTransitAndEnd:     flow is created, dispatch one event, then ended
+ * bindByShape:             compose reactors and bind them by ReactorShape, then notify one transition
+ * bindByProxy:             baseline before ReactorShape, compose reactors and bind them 
+ *                          by InterfaceUtils.compositeIncludeType proxies, then notify one transition
+ *  
+ * @author isdom
+ *
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReactorBuilderBenchmark {
+    
+    @Param({"0", "1", "4"})
+    public int builders;
+    
+    @Setup(Level.Trial)
+    public void setup() {
+        this._container = new FlowContainer("bench");
+        final ReactorBuilder[] reactorBuilders = new ReactorBuilder[this.builders];
+        for (int idx = 0; idx < this.builders; idx++) {
+            reactorBuilders[idx] = new FlowContext.ReactorBuilder() {
+                @Override
+                public Object[] buildReactors(final FlowContext ctx) {
+                    return new Object[]{NOP_LISTENER};
+                }};
+            this._container.addReactorBuilder(reactorBuilders[idx]);
+        }
+        this._engine = this._container.buildEventEngine(ExectionLoop.immediateLoop);
+        this._plan = new ReactorPlan(reactorBuilders, new ReactorShape.Cache());
+    }
+    
+    @Benchmark
+    public int createAndEnd() throws Exception {
+        final BenchFlow flow = new BenchFlow();
+        final EventReceiver receiver = this._engine.create("builder", flow.RUNNING, flow);
+        receiver.acceptEvent("end");
+        return this._container.getFlowTotalCount();
+    }
+    
+    @Benchmark
+    public int createTransitAndEnd() throws Exception {
+        final BenchFlow flow = new BenchFlow();
+        final EventReceiver receiver = this._engine.create("builder", flow.RUNNING, flow);
+        receiver.acceptEvent("tick");
+        receiver.acceptEvent("end");
+        return this._container.getFlowTotalCount();
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public int bindByShape() throws Exception {
+        final BenchFlow flow = new BenchFlow();
+        final Object[] reactors = this._plan.compose(new Object[]{flow}, NOP_STATECHANGED, null);
+        final ReactorShape shape = this._plan.shapeOf(reactors);
+        final EventHandlerAware[] awares = shape.eventHandlerAwares(reactors);
+        final FlowLifecycleListener[] lifecycleListeners = shape.flowLifecycleListeners(reactors);
+        final FlowStateChangedListener<EventHandler>[] listeners = shape.flowStateChangedListeners(reactors);
+        for (EventHandlerAware aware : awares) {
+            aware.setEventHandler(flow.RUNNING);
+        }
+        for (FlowStateChangedListener<EventHandler> listener : listeners) {
+            listener.onStateChanged(flow.RUNNING, flow.RUNNING, "tick", null);
+        }
+        return awares.length + lifecycleListeners.length + listeners.length;
+    }
+    
+    @SuppressWarnings("unchecked")
+    @Benchmark
+    public int bindByProxy() throws Exception {
+        final BenchFlow flow = new BenchFlow();
+        final Object[] reactors = this._plan.compose(new Object[]{flow}, NOP_STATECHANGED, null);
+        final EventHandlerAware aware = 
+                InterfaceUtils.compositeIncludeType(EventHandlerAware.class, reactors);
+        final FlowLifecycleListener lifecycleListener = 
+                InterfaceUtils.compositeIncludeType(FlowLifecycleListener.class, reactors);
+        final FlowStateChangedListener<EventHandler> listener = 
+                InterfaceUtils.compositeIncludeType(FlowStateChangedListener.class, reactors);
+        if (null != aware) {
+            aware.setEventHandler(flow.RUNNING);
+        }
+        if (null != listener) {
+            listener.onStateChanged(flow.RUNNING, flow.RUNNING, "tick", null);
+        }
+        return (null != aware ? 1 : 0) + (null != lifecycleListener ? 1 : 0) + (null != listener ? 1 : 0);
+    }
+    
+    private static final FlowLifecycleListener NOP_LISTENER = new FlowLifecycleListener() {
+        @Override
+        public void afterEventReceiverCreated(final EventReceiver receiver) {
+        }
+
+        @Override
+        public void afterFlowDestroy() {
+        }};
+    
+    private static final FlowStateChangedListener<EventHandler> NOP_STATECHANGED = 
+            new FlowStateChangedListener<EventHandler>() {
+        @Override
+        public void onStateChanged(final EventHandler prev, final EventHandler next, 
+                final String causeEvent, final Object[] causeArgs) {
+        }};
+    
+    private FlowContainer _container;
+    private EventEngine _engine;
+    private ReactorPlan _plan;
+}
@@ -0,0 +1,182 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jocean.event.core.FlowContextImpl.DeferrableStatusReactor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * built-in StatusReactor of FlowContainer:
+ *  max live flows:     new flow exceed limit is shed at its first-time activation
+ *                      (queue it can't reduce live flows, so always shed)
+ *  max active flows:   new flow exceed limit is shed or queued by AdmissionPolicy,
+ *                      flow already running is never stopped.
+ *  
+ * active flows is counted by StripedCounter: +1 onActive, -1 onUnactive, 
+ *  except first-time activation, which is counted when flow admitted (checkIfExceedLimit),
+ *  so burst of new flows activated before their first dispatch are admitted one by one.
+ *  queued flow is not counted until it resumed, and removed from queue when destroyed.
+ * 
+ * @author isdom
+ *
+ */
+final class AdmissionControl implements DeferrableStatusReactor {
+    
+    private static final Logger LOG = 
+            LoggerFactory.getLogger(AdmissionControl.class);
+    
+    /**
+     * @param shedCount counter of flows shed, shared with container's deal bypass count
+     */
+    AdmissionControl(final AtomicInteger liveFlowCount, final AtomicLong shedCount) {
+        this._liveFlowCount = liveFlowCount;
+        this._shedCount = shedCount;
+    }
+    
+    int getMaxLiveFlows() {
+        return this._maxLiveFlows;
+    }
+    
+    void setMaxLiveFlows(final int maxLiveFlows) {
+        this._maxLiveFlows = maxLiveFlows;
+    }
+    
+    int getMaxActiveFlows() {
+        return this._maxActiveFlows;
+    }
+    
+    AdmissionPolicy getPolicy() {
+        return this._policy;
+    }
+    
+    void setMaxActiveFlows(final int maxActiveFlows, final AdmissionPolicy policy) {
+        this._maxActiveFlows = maxActiveFlows;
+        this._policy = null != policy ? policy : AdmissionPolicy.SHED;
+        //  limit may be raised, let queued flows in
+        resumeQueued();
+    }
+    
+    long getActiveFlowCount() {
+        return this._activeFlows.sum();
+    }
+    
+    long getActivationCount() {
+        return this._activations.sum();
+    }
+    
+    int getQueuedFlowCount() {
+        return this._queuedCount.get();
+    }
+    
+    long getShedFlowCount() {
+        return this._shedCount.get();
+    }
+    
+    @Override
+    public boolean checkIfExceedLimit(final FlowContextImpl ctx) {
+        //  count first-time activation here, flow shed will be uncounted by onUnactive
+        this._activeFlows.increment();
+        final int maxLive = this._maxLiveFlows;
+        if (maxLive > 0 && this._liveFlowCount.get() > maxLive) {
+            return true;
+        }
+        return AdmissionPolicy.SHED == this._policy && isActiveExceed();
+    }
+
+    @Override
+    public void onDestroyByExceedLimit(final FlowContextImpl ctx) {
+        this._shedCount.incrementAndGet();
+        LOG.warn("flow {} shed by admission control, live flows: {}/{}, active flows: {}/{}", 
+                ctx, this._liveFlowCount.get(), this._maxLiveFlows, 
+                this._activeFlows.sum(), this._maxActiveFlows);
+    }
+
+    @Override
+    public boolean deferIfBusy(final FlowContextImpl ctx) {
+        if (AdmissionPolicy.QUEUE != this._policy || !isActiveExceed()) {
+            return false;
+        }
+        //  queued flow keep its ACTIVE, but not counted as active flow
+        this._activeFlows.decrement();
+        this._queuedCount.incrementAndGet();
+        this._queuedFlows.add(ctx);
+        if ( LOG.isDebugEnabled() ) {
+            LOG.debug("flow {} queued by admission control, active flows: {}/{}", 
+                    ctx, this._activeFlows.sum(), this._maxActiveFlows);
+        }
+        //  active flow may become unactive before ctx queued, re-check here
+        resumeQueued();
+        return true;
+    }
+
+    @Override
+    public boolean takeOverDeferred(final FlowContextImpl ctx) {
+        //  race with resumeQueued: only one of them can take ctx from queue
+        if (!this._queuedFlows.remove(ctx)) {
+            return false;
+        }
+        this._queuedCount.decrementAndGet();
+        //  counted as resumed, and uncounted by onUnactive when taker release mailbox
+        this._activeFlows.increment();
+        if ( LOG.isDebugEnabled() ) {
+            LOG.debug("flow {} destroyed when queued by admission control, remove it", ctx);
+        }
+        return true;
+    }
+
+    @Override
+    public void onActive(final FlowContextImpl ctx) {
+        if (!ctx.isFirsttimeActived()) {
+            this._activeFlows.increment();
+        }
+        this._activations.increment();
+    }
+
+    @Override
+    public void onUnactive(final FlowContextImpl ctx) {
+        this._activeFlows.decrement();
+        resumeQueued();
+    }
+    
+    private boolean isActiveExceed() {
+        final int maxActive = this._maxActiveFlows;
+        //  flow being checked has been counted
+        return maxActive > 0 && this._activeFlows.sum() > maxActive;
+    }
+    
+    private void resumeQueued() {
+        while (this._queuedCount.get() > 0) {
+            final int maxActive = this._maxActiveFlows;
+            if (maxActive > 0 && this._activeFlows.sum() >= maxActive) {
+                return;
+            }
+            final FlowContextImpl ctx = this._queuedFlows.poll();
+            if (null == ctx) {
+                return;
+            }
+            this._queuedCount.decrementAndGet();
+            this._activeFlows.increment();
+            ctx.resumeActivation();
+        }
+    }
+    
+    private final AtomicInteger _liveFlowCount;
+    
+    private volatile int _maxLiveFlows = 0;
+    private volatile int _maxActiveFlows = 0;
+    private volatile AdmissionPolicy _policy = AdmissionPolicy.SHED;
+    
+    private final StripedCounter _activeFlows = new StripedCounter();
+    private final StripedCounter _activations = new StripedCounter();
+    private final AtomicLong _shedCount;
+    
+    private final Queue<FlowContextImpl> _queuedFlows = new ConcurrentLinkedQueue<FlowContextImpl>();
+    private final AtomicInteger _queuedCount = new AtomicInteger(0);
+}
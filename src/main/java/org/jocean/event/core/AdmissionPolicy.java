@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * what to do with flow's first-time activation when active flows reach limit
+ * 
+ * @author isdom
+ *
+ */
+public enum AdmissionPolicy {
+    
+    /**
+     * destroy new flow, its pending events are notified as unhandled
+     */
+    SHED,
+    
+    /**
+     * keep new flow waiting (its events are buffered in mailbox), 
+     * and activate it when some active flow become unactive
+     */
+    QUEUE
+}
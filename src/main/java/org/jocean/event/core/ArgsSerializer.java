@@ -0,0 +1,25 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * convert args of event to bytes & back, used when flow's state is persisted 
+ *  (eg: snapshot of FlowContainer)
+ * 
+ * @author isdom
+ *
+ */
+public interface ArgsSerializer {
+    
+    /**
+     * @param event name of event, null when serialize flow's end reason (as args[0])
+     * @param args  args of event, never null
+     */
+    public byte[] serialize(final String event, final Object[] args) throws Exception;
+    
+    /**
+     * @param event name of event, null when deserialize flow's end reason
+     */
+    public Object[] deserialize(final String event, final byte[] bytes) throws Exception;
+}
@@ -0,0 +1,21 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * notified when pending events count of flow cross watermark,
+ *  edge triggered: onHighWatermark once when count reach high watermark,
+ *  then onLowWatermark once when count fall back to low watermark.
+ * 
+ * invoked by producer (high) or dispatch thread (low) of flow, so MUST NOT block.
+ * 
+ * @author isdom
+ *
+ */
+public interface BackpressureListener {
+    
+    public void onHighWatermark(final FlowContext ctx, final int pendingCount);
+    
+    public void onLowWatermark(final FlowContext ctx, final int pendingCount);
+}
@@ -0,0 +1,26 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * EventReceiver created by FlowContainer also implements this interface,
+ *  so producer can poll the queue depth of flow before push more events.
+ * 
+ * @author isdom
+ *
+ */
+public interface BackpressureSource {
+    
+    /**
+     * @return count of pending events not yet dispatched, 
+     *  -1 means not tracked (no capacity and no watermark set for flow)
+     */
+    public int getPendingEventCount();
+    
+    /**
+     * @return true after pending events reach high watermark, 
+     *  and until they fall back to low watermark
+     */
+    public boolean isAboveHighWatermark();
+}
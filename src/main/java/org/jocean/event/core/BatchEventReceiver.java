@@ -0,0 +1,38 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.EventReceiver;
+import org.jocean.event.api.internal.Eventable;
+
+/**
+ * EventReceiver created by FlowContainer also implements this interface:
+ *  events in one batch are enqueued in order, and each run of normal events is enqueued atomically 
+ *  and schedule flow at most once. 
+ *  event which can't be enqueued with others is pushed alone between runs: 
+ *  priority event (PriorityEventable) is hoisted to priority lane, 
+ *  so it may be dispatched before normal events ahead of it in batch, 
+ *  and conflatable event (ConflatableEventable) may replace pending one instead of enqueued.
+ *  under OverflowPolicy.BLOCK, run larger than free capacity is enqueued in parts, 
+ *  permitted prefix first, then the rest when room available.
+ *  
+ * @author isdom
+ *
+ */
+public interface BatchEventReceiver extends EventReceiver {
+    
+    /**
+     * @param events
+     * @param args  args of each event, null or shorter than events means no args
+     * @return accept result of each event
+     */
+    public boolean[] acceptEvents(final String[] events, final Object[][] args);
+    
+    /**
+     * @param eventables
+     * @param args  args of each eventable, null or shorter than eventables means no args
+     * @return accept result of each eventable
+     */
+    public boolean[] acceptEvents(final Eventable[] eventables, final Object[][] args);
+}
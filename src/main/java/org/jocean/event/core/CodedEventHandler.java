@@ -0,0 +1,20 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.internal.EventHandler;
+import org.jocean.idiom.Pair;
+
+/**
+ * EventHandler which accept event by code: 
+ *  when flow dispatch CodedEventable to it, process(code, event, args) is invoked instead of process(event, args)
+ * 
+ * @author isdom
+ *
+ */
+public interface CodedEventHandler extends EventHandler {
+    
+    public Pair<EventHandler, Boolean> process(final int code, final String event, final Object[] args) 
+            throws Exception;
+}
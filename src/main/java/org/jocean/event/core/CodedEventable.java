@@ -0,0 +1,18 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.internal.Eventable;
+
+/**
+ * Eventable carry dense integer code registered in EventCodeRegistry,
+ *  so flow can route it to CodedEventHandler by array index, instead of matching event name.
+ * 
+ * @author isdom
+ *
+ */
+public interface CodedEventable extends Eventable {
+    
+    public int code();
+}
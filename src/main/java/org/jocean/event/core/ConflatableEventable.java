@@ -0,0 +1,26 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.internal.Eventable;
+
+/**
+ * Eventable of event which only the latest one matters (eg: state updated),
+ *  when event with same conflation key is still pending in flow, 
+ *  it's replaced by new one instead of append new one, 
+ *  and args of replaced one is released by ArgsHandler.afterInvoke.
+ *  
+ *  NOTE: conflatable event accepted by flow with EventJournal is pending as normal event.
+ *  conflatable event in batch (FlowContextImpl.processEvents) is conflated as well.
+ * 
+ * @author isdom
+ *
+ */
+public interface ConflatableEventable extends Eventable {
+    
+    /**
+     * @return key to conflate, null means conflate by event name
+     */
+    public Object conflationKey();
+}
@@ -0,0 +1,104 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * pending placeholder of conflatable event in flow's mailbox: 
+ *  producers replace its payload until the consumer take it.
+ * 
+ * @author isdom
+ *
+ */
+final class ConflatedEvent {
+    
+    static final class Payload {
+        
+        Payload(final Object eventable, final Object[] args) {
+            this._eventable = eventable;
+            this._args = args;
+        }
+        
+        Object eventable() {
+            return this._eventable;
+        }
+        
+        Object[] args() {
+            return this._args;
+        }
+        
+        private final Object _eventable;
+        private final Object[] _args;
+    }
+    
+    ConflatedEvent(final Object key, final int generation, final Object eventable, final Object[] args) {
+        this._key = key;
+        this._generation = generation;
+        this._priority = eventable instanceof PriorityEventable;
+        this._payload = new Payload(eventable, args);
+    }
+    
+    Object key() {
+        return this._key;
+    }
+    
+    /**
+     * @return generation of flow's mailbox when pended, 
+     *  producer of other generation MUST NOT replace its payload
+     */
+    int generation() {
+        return this._generation;
+    }
+    
+    /**
+     * @return true if pended in priority lane (decided by first eventable)
+     */
+    boolean isPriority() {
+        return this._priority;
+    }
+    
+    /**
+     * @return payload replaced, null means payload has been taken, 
+     *  caller should pend new ConflatedEvent
+     */
+    Payload replace(final Object eventable, final Object[] args) {
+        final Payload next = new Payload(eventable, args);
+        for (;;) {
+            final Payload current = this._payload;
+            if (TAKEN == current) {
+                return null;
+            }
+            if (PAYLOAD_UPDATER.compareAndSet(this, current, next)) {
+                return current;
+            }
+        }
+    }
+    
+    /**
+     * @return latest payload, null means payload has been taken
+     */
+    Payload take() {
+        final Payload payload = PAYLOAD_UPDATER.getAndSet(this, TAKEN);
+        return TAKEN != payload ? payload : null;
+    }
+    
+    /**
+     * @return latest payload without take it, null means payload has been taken
+     */
+    Payload peek() {
+        final Payload payload = this._payload;
+        return TAKEN != payload ? payload : null;
+    }
+    
+    private static final Payload TAKEN = new Payload(null, null);
+    
+    private static final AtomicReferenceFieldUpdater<ConflatedEvent, Payload> PAYLOAD_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(ConflatedEvent.class, Payload.class, "_payload");
+    
+    private final Object _key;
+    private final int _generation;
+    private final boolean _priority;
+    private volatile Payload _payload;
+}
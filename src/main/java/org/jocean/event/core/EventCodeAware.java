@@ -0,0 +1,16 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * reactor which want to know code of current dispatching event,
+ *  code is -1 when event is not CodedEventable
+ * 
+ * @author isdom
+ *
+ */
+public interface EventCodeAware {
+    
+    public void setEventCode(final int code);
+}
@@ -0,0 +1,103 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * registry of events with dense integer codes (0, 1, 2 ...), 
+ *  register event once (eg: as static final field), then push the returned CodedEventable
+ *  instead of event name.
+ *  
+ * @author isdom
+ *
+ */
+public final class EventCodeRegistry {
+    
+    public static final int UNKNOWN_CODE = -1;
+    
+    private EventCodeRegistry() {
+    }
+    
+    /**
+     * @return CodedEventable of event, same instance for same event name
+     */
+    public static CodedEventable register(final String event) {
+        if (null == event) {
+            throw new NullPointerException("event is null");
+        }
+        final CodedEventable exist = BY_NAME.get(event);
+        if (null != exist) {
+            return exist;
+        }
+        synchronized (EventCodeRegistry.class) {
+            final CodedEventable registered = BY_NAME.get(event);
+            if (null != registered) {
+                return registered;
+            }
+            final CodedEvent coded = new CodedEvent(event, _byCode.length);
+            final CodedEventable[] byCode = Arrays.copyOf(_byCode, _byCode.length + 1);
+            byCode[coded._code] = coded;
+            _byCode = byCode;
+            BY_NAME.put(event, coded);
+            return coded;
+        }
+    }
+    
+    /**
+     * @return code of event, or UNKNOWN_CODE if event not registered
+     */
+    public static int codeOf(final String event) {
+        final CodedEventable coded = null != event ? BY_NAME.get(event) : null;
+        return null != coded ? coded.code() : UNKNOWN_CODE;
+    }
+    
+    /**
+     * @return registered CodedEventable, or null if code not registered
+     */
+    public static CodedEventable eventableOf(final int code) {
+        final CodedEventable[] byCode = _byCode;
+        return code >= 0 && code < byCode.length ? byCode[code] : null;
+    }
+    
+    /**
+     * @return count of registered events, all codes are less than it
+     */
+    public static int size() {
+        return _byCode.length;
+    }
+    
+    private static final class CodedEvent implements CodedEventable {
+        
+        CodedEvent(final String event, final int code) {
+            this._event = event;
+            this._code = code;
+        }
+        
+        @Override
+        public String event() {
+            return this._event;
+        }
+
+        @Override
+        public int code() {
+            return this._code;
+        }
+        
+        @Override
+        public String toString() {
+            return this._event + "#" + this._code;
+        }
+        
+        private final String _event;
+        private final int _code;
+    }
+    
+    private static final ConcurrentMap<String, CodedEventable> BY_NAME = 
+            new ConcurrentHashMap<String, CodedEventable>();
+    
+    private static volatile CodedEventable[] _byCode = new CodedEventable[0];
+}
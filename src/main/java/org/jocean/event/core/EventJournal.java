@@ -0,0 +1,625 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32;
+
+import org.jocean.event.api.EventEngine;
+import org.jocean.event.api.EventReceiver;
+import org.jocean.idiom.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * write-ahead journal of events accepted by flows, in append-only segmented log files:
+ *  producers (eg: EventReceiver.acceptEvent) serialize args by ArgsSerializer and append record to queue,
+ *  one writer thread write all queued records by one write & one fsync (group commit),
+ *  and flow never dispatch event before it's durable.
+ *
+ * record  : length(int) crc32(int) type(byte) seq(long) flowKey(long) payload
+ *  CREATE : name(string) handlerName(string)
+ *  EVENT  : event(string) args(bytes)
+ *  DISCARD: seq of journaled event which has been rejected by flow
+ *  END    : (empty)
+ *  string : length(int) utf-8 bytes
+ *  bytes  : length(int, -1 means null) content
+ *
+ * replay journal by replay(dir, ...), SHOULD into container whose journal is in other dir,
+ *  then journal dir can be removed after replay.
+ *
+ * checkpoint: rolled segments (written by this journal) before the segment where
+ *  oldest live flow's first record in are deleted, records in them are all of ended flows,
+ *  so journal of long running container keep only segments since oldest live flow.
+ *  NOTE: long-lived flow pins all segments since its creation, end (or destroy) it
+ *      and re-create it as new flow if it lives much longer than others.
+ *      segments of previous run are never deleted, remove them after replay.
+ *
+ * @author isdom
+ *
+ */
+public class EventJournal {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(EventJournal.class);
+
+    public static final long DEFAULT_SEGMENT_BYTES = 64L * 1024 * 1024;
+    public static final int DEFAULT_MAX_BATCH = 4096;
+
+    public EventJournal(final File dir, final ArgsSerializer serializer) throws IOException {
+        this(dir, serializer, DEFAULT_SEGMENT_BYTES, true);
+    }
+
+    /**
+     * @param segmentBytes      roll to new segment file when current segment exceed it
+     * @param waitOnAccept      true means acceptEvent return after event is durable,
+     *                          false means acceptEvent return at once, and only dispatch wait for durable
+     */
+    public EventJournal(final File dir,
+            final ArgsSerializer serializer,
+            final long segmentBytes,
+            final boolean waitOnAccept) throws IOException {
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("can't create journal dir " + dir);
+        }
+        this._dir = dir;
+        this._serializer = serializer;
+        this._segmentBytes = segmentBytes;
+        this._waitOnAccept = waitOnAccept;
+        final File[] segments = listSegments(dir);
+        this._segmentIndex = segments.length > 0
+                ? indexOf(segments[segments.length - 1]) + 1
+                : 0;
+        this._runId = this._segmentIndex;
+        this._firstUndeleted = this._segmentIndex;
+        //  seq is unique across runs in same dir, so DISCARD never refer to event of other run
+        this._lastSeq = (long)this._runId << 40;
+        openSegment();
+        this._writer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runWriter();
+            }}, "event-journal-" + ALL_JOURNAL_COUNTER.incrementAndGet());
+        this._writer.setDaemon(true);
+        this._writer.start();
+    }
+
+    public File getDir() {
+        return this._dir;
+    }
+
+    public boolean isWaitOnAccept() {
+        return this._waitOnAccept;
+    }
+
+    /**
+     * @return count of group commits (fsync) since journal opened
+     */
+    public long getCommitCount() {
+        return this._commitCount;
+    }
+
+    /**
+     * @return count of records written since journal opened
+     */
+    public long getRecordCount() {
+        return this._recordCount;
+    }
+
+    /**
+     * @return count of segments deleted by checkpoint since journal opened
+     */
+    public long getDeletedSegmentCount() {
+        return this._deletedSegmentCount;
+    }
+
+    /**
+     * stop writer after all appended records written, then close current segment
+     */
+    public void close() {
+        this._closed = true;
+        try {
+            this._writer.join();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    static final class Record {
+
+        Record(final byte type, final long flowKey, final byte[] payload, final Record target) {
+            this._type = type;
+            this._flowKey = flowKey;
+            this._payload = payload;
+            this._target = target;
+        }
+
+        /**
+         * @return true means record is durable, false means journal failed
+         */
+        boolean awaitDurable() {
+            if (!this._done) {
+                synchronized (this) {
+                    boolean interrupted = false;
+                    while (!this._done) {
+                        try {
+                            this.wait();
+                        }
+                        catch (InterruptedException e) {
+                            interrupted = true;
+                        }
+                    }
+                    if (interrupted) {
+                        Thread.currentThread().interrupt();
+                    }
+                }
+            }
+            return this._durable;
+        }
+
+        private void complete(final boolean durable) {
+            synchronized (this) {
+                this._durable = durable;
+                this._done = true;
+                this.notifyAll();
+            }
+        }
+
+        private final byte _type;
+        private final long _flowKey;
+        private final byte[] _payload;
+        //  for DISCARD
+        private final Record _target;
+        //  assigned by writer
+        private long _seq;
+        private volatile boolean _done = false;
+        private volatile boolean _durable = false;
+    }
+
+    long flowKeyOf(final int flowId) {
+        return ((long)this._runId << 32) | (flowId & 0xffffffffL);
+    }
+
+    void flowCreated(final long flowKey, final String name, final String handlerName) {
+        final byte[] nameBytes = (null != name ? name : "").getBytes(UTF8);
+        final byte[] handlerBytes = (null != handlerName ? handlerName : "").getBytes(UTF8);
+        append(new Record(CREATE, flowKey, ByteBuffer.allocate(8 + nameBytes.length + handlerBytes.length)
+                .putInt(nameBytes.length).put(nameBytes)
+                .putInt(handlerBytes.length).put(handlerBytes)
+                .array(), null));
+    }
+
+    void flowEnded(final long flowKey) {
+        append(new Record(END, flowKey, NO_PAYLOAD, null));
+    }
+
+    /**
+     * serialize event & args in caller's thread, out of flow's journal lock
+     */
+    byte[] encodeEvent(final String event, final Object[] args) throws Exception {
+        final byte[] eventBytes = event.getBytes(UTF8);
+        final byte[] argsBytes = this._serializer.serialize(event, args);
+        final ByteBuffer buf = ByteBuffer.allocate(4 + eventBytes.length + 4
+                + (null != argsBytes ? argsBytes.length : 0));
+        buf.putInt(eventBytes.length).put(eventBytes);
+        if (null != argsBytes) {
+            buf.putInt(argsBytes.length).put(argsBytes);
+        }
+        else {
+            buf.putInt(-1);
+        }
+        return buf.array();
+    }
+
+    /**
+     * @return null when journal has been closed or failed
+     */
+    Record appendEvent(final long flowKey, final byte[] encoded) {
+        final Record record = new Record(EVENT, flowKey, encoded, null);
+        return append(record) ? record : null;
+    }
+
+    /**
+     * journaled event has been rejected by flow, replay SHOULD skip it
+     */
+    void discard(final long flowKey, final Record record) {
+        append(new Record(DISCARD, flowKey, NO_PAYLOAD, record));
+    }
+
+    private boolean append(final Record record) {
+        if (this._closed || this._failed) {
+            return false;
+        }
+        this._queue.add(record);
+        if (this._failed && this._queue.remove(record)) {
+            //  writer has exited
+            record.complete(false);
+            return false;
+        }
+        return true;
+    }
+
+    private void runWriter() {
+        final List<Record> batch = new ArrayList<>();
+        ByteBuffer buf = ByteBuffer.allocateDirect(INIT_BUFFER_BYTES);
+        final CRC32 crc = new CRC32();
+        try {
+            for (;;) {
+                final Record first;
+                try {
+                    first = this._queue.poll(CLOSE_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                catch (InterruptedException e) {
+                    break;
+                }
+                if (null == first) {
+                    if (this._closed) {
+                        break;
+                    }
+                    continue;
+                }
+                batch.add(first);
+                this._queue.drainTo(batch, DEFAULT_MAX_BATCH - 1);
+
+                buf.clear();
+                for (Record record : batch) {
+                    record._seq = ++this._lastSeq;
+                    final byte[] payload = DISCARD == record._type
+                            ? ByteBuffer.allocate(8).putLong(record._target._seq).array()
+                            : record._payload;
+                    final int length = RECORD_HEADER_BYTES + payload.length;
+                    if (buf.remaining() < 4 + length) {
+                        buf = grow(buf, 4 + length);
+                    }
+                    buf.putInt(length);
+                    final int crcPos = buf.position();
+                    buf.putInt(0);
+                    final int bodyPos = buf.position();
+                    buf.put(record._type).putLong(record._seq).putLong(record._flowKey).put(payload);
+                    crc.reset();
+                    crc.update(bodyOf(buf, bodyPos));
+                    buf.putInt(crcPos, (int)crc.getValue());
+                }
+                buf.flip();
+                boolean durable = false;
+                try {
+                    while (buf.hasRemaining()) {
+                        this._channel.write(buf);
+                    }
+                    this._channel.force(false);
+                    durable = true;
+                    this._commitCount++;
+                    this._recordCount += batch.size();
+                    for (Record record : batch) {
+                        trackFlowOf(record);
+                    }
+                    if (this._channel.position() >= this._segmentBytes) {
+                        closeSegment();
+                        this._segmentIndex++;
+                        openSegment();
+                    }
+                    deleteEndedSegments();
+                }
+                catch (IOException e) {
+                    this._failed = true;
+                    LOG.error("exception when write journal {}, journal failed, detail: {}",
+                            this._dir, ExceptionUtils.exception2detail(e));
+                }
+                for (Record record : batch) {
+                    record.complete(durable);
+                }
+                batch.clear();
+                if (this._failed) {
+                    break;
+                }
+            }
+        }
+        finally {
+            this._failed = true;
+            //  wake up all waiter of records which will never be written
+            Record record;
+            while (null != (record = this._queue.poll())) {
+                record.complete(false);
+            }
+            try {
+                closeSegment();
+            }
+            catch (IOException e) {
+                LOG.warn("exception when close journal segment in {}, detail: {}",
+                        this._dir, ExceptionUtils.exception2detail(e));
+            }
+        }
+    }
+
+    /**
+     * record segment which live flow's first record (CREATE) in, and forget it when flow ended.
+     *  EVENT/DISCARD of untracked flow (eg: producer raced flow's end, landed after END) are ignored,
+     *  otherwise ended flow will be live forever and segments never be deleted
+     */
+    private void trackFlowOf(final Record record) {
+        if (END == record._type) {
+            final Integer first = this._firstSegmentOfFlow.remove(record._flowKey);
+            if (null != first) {
+                final AtomicInteger live = this._liveFlowsOfSegment.get(first);
+                if (0 == live.decrementAndGet()) {
+                    this._liveFlowsOfSegment.remove(first);
+                }
+            }
+            return;
+        }
+        if (CREATE == record._type && !this._firstSegmentOfFlow.containsKey(record._flowKey)) {
+            this._firstSegmentOfFlow.put(record._flowKey, this._segmentIndex);
+            AtomicInteger live = this._liveFlowsOfSegment.get(this._segmentIndex);
+            if (null == live) {
+                live = new AtomicInteger(0);
+                this._liveFlowsOfSegment.put(this._segmentIndex, live);
+            }
+            live.incrementAndGet();
+        }
+    }
+
+    /**
+     * delete rolled segments before first segment of oldest live flow,
+     *  records in them are all of ended flows (include their END)
+     */
+    private void deleteEndedSegments() {
+        final int lowWatermark = this._liveFlowsOfSegment.isEmpty()
+                ? this._segmentIndex
+                : Math.min(this._liveFlowsOfSegment.firstKey(), this._segmentIndex);
+        while (this._firstUndeleted < lowWatermark) {
+            final File segment = segmentOf(this._dir, this._firstUndeleted++);
+            if (segment.delete()) {
+                this._deletedSegmentCount++;
+            }
+            else {
+                LOG.warn("can't delete journal segment {} which all flows ended", segment);
+            }
+        }
+    }
+
+    private static ByteBuffer bodyOf(final ByteBuffer buf, final int bodyPos) {
+        final ByteBuffer body = buf.duplicate();
+        body.limit(buf.position());
+        body.position(bodyPos);
+        return body;
+    }
+
+    private static ByteBuffer grow(final ByteBuffer buf, final int required) {
+        int capacity = buf.capacity();
+        while (capacity - buf.position() < required) {
+            capacity <<= 1;
+        }
+        final ByteBuffer bigger = ByteBuffer.allocateDirect(capacity);
+        buf.flip();
+        bigger.put(buf);
+        return bigger;
+    }
+
+    private void openSegment() throws IOException {
+        this._file = new RandomAccessFile(segmentOf(this._dir, this._segmentIndex), "rw");
+        this._channel = this._file.getChannel();
+        this._channel.position(this._channel.size());
+    }
+
+    private void closeSegment() throws IOException {
+        if (null != this._file) {
+            this._channel.force(true);
+            this._file.close();
+            this._file = null;
+            this._channel = null;
+        }
+    }
+
+    /**
+     * replay all segments in journal dir: re-create flows by restorer (via engine.create)
+     *  with name & init handler's name journaled, then re-push their events in order,
+     *  event's name registered in EventCodeRegistry is re-pushed as CodedEventable.
+     *  torn record at tail of segment (crash during write) is ignored.
+     * @return count of flows re-created
+     */
+    public static int replay(final File dir,
+            final EventEngine engine,
+            final ArgsSerializer serializer,
+            final FlowRestorer restorer) throws IOException {
+        final File[] segments = listSegments(dir);
+        //  pass 1: collect rejected events
+        final Set<Long> discarded = new HashSet<>();
+        for (File segment : segments) {
+            final MappedByteBuffer buf = mapSegment(segment);
+            ByteBuffer record;
+            while (null != (record = nextRecord(buf, segment))) {
+                if (DISCARD == record.get()) {
+                    record.getLong();
+                    record.getLong();
+                    discarded.add(record.getLong());
+                }
+            }
+        }
+        //  pass 2: re-create flows & re-push events
+        final Map<Long, EventReceiver> receivers = new HashMap<>();
+        int created = 0;
+        for (File segment : segments) {
+            final MappedByteBuffer buf = mapSegment(segment);
+            ByteBuffer record;
+            while (null != (record = nextRecord(buf, segment))) {
+                final byte type = record.get();
+                final long seq = record.getLong();
+                final long flowKey = record.getLong();
+                try {
+                    switch (type) {
+                    case CREATE: {
+                        final String name = readString(record);
+                        final String handlerName = readString(record);
+                        final EventReceiver receiver = restorer.restore(engine, name, handlerName);
+                        if (null != receiver) {
+                            receivers.put(flowKey, receiver);
+                            created++;
+                        }
+                        break;
+                    }
+                    case EVENT: {
+                        final EventReceiver receiver = receivers.get(flowKey);
+                        if (null == receiver || discarded.contains(seq)) {
+                            break;
+                        }
+                        final String event = readString(record);
+                        final int argsLength = record.getInt();
+                        Object[] args = NO_ARGS;
+                        if (argsLength >= 0) {
+                            final byte[] argsBytes = new byte[argsLength];
+                            record.get(argsBytes);
+                            args = serializer.deserialize(event, argsBytes);
+                        }
+                        final CodedEventable coded = EventCodeRegistry.eventableOf(
+                                EventCodeRegistry.codeOf(event));
+                        if (null != coded) {
+                            receiver.acceptEvent(coded, args);
+                        }
+                        else {
+                            receiver.acceptEvent(event, args);
+                        }
+                        break;
+                    }
+                    case END:
+                        receivers.remove(flowKey);
+                        break;
+                    default:
+                        break;
+                    }
+                }
+                catch (Exception e) {
+                    LOG.warn("exception when replay record(seq:{}) of journal {}, skip it, detail: {}",
+                            seq, segment, ExceptionUtils.exception2detail(e));
+                }
+            }
+        }
+        return created;
+    }
+
+    /**
+     * @return body of next record (start with type), or null when reach end or torn record
+     */
+    private static ByteBuffer nextRecord(final ByteBuffer buf, final File segment) {
+        if (buf.remaining() < 4 + 4 + RECORD_HEADER_BYTES) {
+            return null;
+        }
+        final int length = buf.getInt();
+        if (length < RECORD_HEADER_BYTES || length > buf.remaining()) {
+            return tornAt(buf, segment);
+        }
+        final int crc = buf.getInt();
+        final ByteBuffer body = buf.slice();
+        body.limit(length - 4);
+        final CRC32 crc32 = new CRC32();
+        crc32.update(body.duplicate());
+        if ((int)crc32.getValue() != crc) {
+            return tornAt(buf, segment);
+        }
+        buf.position(buf.position() + length - 4);
+        return body;
+    }
+
+    private static ByteBuffer tornAt(final ByteBuffer buf, final File segment) {
+        LOG.warn("torn record at {} of journal {}, ignore rest of segment", buf.position(), segment);
+        buf.position(buf.limit());
+        return null;
+    }
+
+    private static String readString(final ByteBuffer buf) {
+        final byte[] bytes = new byte[buf.getInt()];
+        buf.get(bytes);
+        return new String(bytes, UTF8);
+    }
+
+    private static MappedByteBuffer mapSegment(final File segment) throws IOException {
+        final RandomAccessFile file = new RandomAccessFile(segment, "r");
+        try {
+            return file.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, file.length());
+        }
+        finally {
+            file.close();
+        }
+    }
+
+    private static File[] listSegments(final File dir) {
+        final File[] segments = dir.listFiles(new FileFilter() {
+            @Override
+            public boolean accept(final File file) {
+                return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+            }});
+        if (null == segments) {
+            return new File[0];
+        }
+        Arrays.sort(segments);
+        return segments;
+    }
+
+    private static File segmentOf(final File dir, final int index) {
+        return new File(dir, String.format("%010d", index) + SEGMENT_SUFFIX);
+    }
+
+    private static int indexOf(final File segment) {
+        final String name = segment.getName();
+        return Integer.parseInt(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    static final byte CREATE = 1;
+    static final byte EVENT = 2;
+    static final byte DISCARD = 3;
+    static final byte END = 4;
+
+    //  crc32 + type + seq + flowKey
+    private static final int RECORD_HEADER_BYTES = 4 + 1 + 8 + 8;
+    private static final int INIT_BUFFER_BYTES = 64 * 1024;
+    private static final long CLOSE_CHECK_MILLIS = 100;
+    private static final String SEGMENT_SUFFIX = ".journal";
+    private static final Charset UTF8 = Charset.forName("UTF-8");
+    private static final byte[] NO_PAYLOAD = new byte[0];
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private static final AtomicInteger ALL_JOURNAL_COUNTER = new AtomicInteger(0);
+
+    private final File _dir;
+    private final ArgsSerializer _serializer;
+    private final long _segmentBytes;
+    private final boolean _waitOnAccept;
+    private final int _runId;
+    private final Thread _writer;
+    private final BlockingQueue<Record> _queue = new LinkedBlockingQueue<>();
+
+    private volatile boolean _closed = false;
+    private volatile boolean _failed = false;
+    private volatile long _commitCount = 0;
+    private volatile long _recordCount = 0;
+    private volatile long _deletedSegmentCount = 0;
+
+    //  accessed by writer thread only (after constructor)
+    private int _segmentIndex;
+    private RandomAccessFile _file;
+    private FileChannel _channel;
+    private long _lastSeq = 0;
+    private int _firstUndeleted;
+    private final Map<Long, Integer> _firstSegmentOfFlow = new HashMap<>();
+    private final TreeMap<Integer, AtomicInteger> _liveFlowsOfSegment = new TreeMap<>();
+}
@@ -0,0 +1,33 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.internal.Eventable;
+import org.jocean.idiom.Detachable;
+
+/**
+ * deliver event into flow later, backed by shared timing wheel.
+ *  all pending scheduled events of flow are cancelled when flow destroyed.
+ *  
+ * @author isdom
+ *
+ */
+public interface EventScheduler {
+    
+    /**
+     * @return detach to cancel scheduled event
+     */
+    public Detachable scheduleEvent(final long delayMillis, final String event, final Object... args);
+    
+    public Detachable scheduleEvent(final long delayMillis, final Eventable eventable, final Object... args);
+    
+    /**
+     * deliver event at fixed rate, until detached or flow destroyed
+     */
+    public Detachable schedulePeriodicEvent(final long initialDelayMillis, final long periodMillis, 
+            final String event, final Object... args);
+    
+    public Detachable schedulePeriodicEvent(final long initialDelayMillis, final long periodMillis, 
+            final Eventable eventable, final Object... args);
+}
@@ -0,0 +1,15 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * reactor which want to deliver delayed or periodic event into its flow
+ * 
+ * @author isdom
+ *
+ */
+public interface EventSchedulerAware {
+    
+    public void setEventScheduler(final EventScheduler scheduler);
+}
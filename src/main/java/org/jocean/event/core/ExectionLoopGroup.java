@@ -0,0 +1,157 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jocean.idiom.ExectionLoop;
+
+/**
+ * pool of ExectionLoop managed by FlowContainer, 
+ *  each flow is placed to one of loops when created:
+ *  CONSISTENT_HASH: by consistent hashing of flow's key (business key or sequence), 
+ *      so flows with same key always placed to same loop
+ *  LEAST_LOADED: to the loop with least bound flows
+ *  
+ * @author isdom
+ *
+ */
+public class ExectionLoopGroup {
+
+    public enum Placement {
+        CONSISTENT_HASH,
+        LEAST_LOADED
+    }
+    
+    public ExectionLoopGroup(final Placement placement, final ExectionLoop... loops) {
+        if (null == loops || 0 == loops.length) {
+            throw new IllegalArgumentException("invalid params: loops is empty");
+        }
+        if (loops.length > LOOP_MASK) {
+            throw new IllegalArgumentException("invalid params: too many loops " + loops.length);
+        }
+        this._placement = null != placement ? placement : Placement.CONSISTENT_HASH;
+        this._loops = Arrays.copyOf(loops, loops.length);
+        this._loads = new AtomicInteger[loops.length];
+        for (int idx = 0; idx < loops.length; idx++) {
+            if (null == loops[idx]) {
+                throw new NullPointerException("invalid params: loops[" + idx + "] is null");
+            }
+            this._loads[idx] = new AtomicInteger(0);
+        }
+        
+        //  build hash ring with virtual nodes
+        final int nodes = loops.length * VIRTUAL_NODES;
+        final long[] hashes = new long[nodes];
+        for (int idx = 0; idx < nodes; idx++) {
+            hashes[idx] = (hash(idx) & ~LOOP_MASK) | (idx / VIRTUAL_NODES);
+        }
+        Arrays.sort(hashes);
+        this._ring = hashes;
+    }
+    
+    public Placement getPlacement() {
+        return this._placement;
+    }
+    
+    public int getLoopCount() {
+        return this._loops.length;
+    }
+    
+    public ExectionLoop getLoop(final int idx) {
+        return this._loops[idx];
+    }
+    
+    /**
+     * @return count of flows bound to loop idx
+     */
+    public int getLoad(final int idx) {
+        return this._loads[idx].get();
+    }
+    
+    /**
+     * @return loop selected for new flow without business key
+     */
+    public ExectionLoop select() {
+        return select(this._sequence.getAndIncrement());
+    }
+    
+    /**
+     * @return loop selected for new flow with key
+     */
+    public ExectionLoop select(final long key) {
+        if (Placement.LEAST_LOADED == this._placement) {
+            int selected = 0;
+            for (int idx = 1; idx < this._loads.length; idx++) {
+                if (this._loads[idx].get() < this._loads[selected].get()) {
+                    selected = idx;
+                }
+            }
+            return this._loops[selected];
+        }
+        else {
+            final long hash = hash(key) & ~LOOP_MASK;
+            int pos = Arrays.binarySearch(this._ring, hash);
+            if (pos < 0) {
+                pos = -pos - 1;
+            }
+            if (pos >= this._ring.length) {
+                pos = 0;
+            }
+            return this._loops[(int)(this._ring[pos] & LOOP_MASK)];
+        }
+    }
+    
+    void bind(final ExectionLoop loop) {
+        final int idx = indexOf(loop);
+        if (idx >= 0) {
+            this._loads[idx].incrementAndGet();
+        }
+    }
+    
+    void unbind(final ExectionLoop loop) {
+        final int idx = indexOf(loop);
+        if (idx >= 0) {
+            this._loads[idx].decrementAndGet();
+        }
+    }
+    
+    private int indexOf(final ExectionLoop loop) {
+        for (int idx = 0; idx < this._loops.length; idx++) {
+            if (this._loops[idx] == loop) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+    
+    //  murmur3 fmix64
+    private static long hash(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+    
+    @Override
+    public String toString() {
+        return "ExectionLoopGroup [placement=" + this._placement 
+                + ", loops=" + this._loops.length + "]";
+    }
+
+    private static final int VIRTUAL_NODES = 64;
+    //  low bits of ring node carry index of loop
+    private static final long LOOP_MASK = 0xffffL;
+    
+    private final Placement _placement;
+    private final ExectionLoop[] _loops;
+    private final AtomicInteger[] _loads;
+    private final long[] _ring;
+    private final AtomicLong _sequence = new AtomicLong(0);
+}
@@ -0,0 +1,22 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.idiom.ExectionLoop;
+
+/**
+ * switch flow to another ExectionLoop, the switch is applied between two dispatches,
+ *  so handler of flow never run on two ExectionLoop concurrently.
+ *  
+ * @author isdom
+ *
+ */
+public interface ExectionLoopSwitcher {
+    
+    /**
+     * @param exectionLoop
+     * @return false if flow has been destroyed
+     */
+    public boolean switchTo(final ExectionLoop exectionLoop);
+}
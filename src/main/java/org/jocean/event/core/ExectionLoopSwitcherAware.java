@@ -0,0 +1,15 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * reactor which want to specify ExectionLoop of flow manually
+ * 
+ * @author isdom
+ *
+ */
+public interface ExectionLoopSwitcherAware {
+    
+    public void setExectionLoopSwitcher(final ExectionLoopSwitcher switcher);
+}
@@ -0,0 +1,121 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import org.jocean.event.api.BizStep;
+import org.jocean.event.api.internal.EventHandler;
+
+/**
+ * bounded ring of recent dispatches of one flow:
+ *  event (name reference & code), handler, next handler, timestamp and handled/exception flags,
+ *  kept in parallel primitive & reference arrays, so record format nothing and allocate nothing.
+ *
+ * record is invoked by the owner of flow's mailbox only (single writer),
+ *  dump can be invoked by any thread, and is weakly consistent:
+ *  entry overwritten during dump may be mixed with newer one.
+ *
+ * @author isdom
+ *
+ */
+final class FlightRecorder {
+
+    static final int DEFAULT_SIZE = 16;
+
+    FlightRecorder(final int size) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this._mask = capacity - 1;
+        this._timestamps = new long[capacity];
+        this._codes = new int[capacity];
+        this._flags = new int[capacity];
+        this._events = new String[capacity];
+        this._handlers = new EventHandler[capacity];
+        this._nexts = new EventHandler[capacity];
+    }
+
+    void record(final int code,
+            final String event,
+            final EventHandler handler,
+            final EventHandler next,
+            final boolean handled,
+            final boolean exception) {
+        final long count = this._count;
+        final int idx = (int)count & this._mask;
+        this._timestamps[idx] = System.currentTimeMillis();
+        this._codes[idx] = code;
+        this._flags[idx] = (handled ? HANDLED : 0) | (exception ? EXCEPTION : 0);
+        this._events[idx] = event;
+        this._handlers[idx] = handler;
+        this._nexts[idx] = next;
+        COUNT_UPDATER.lazySet(this, count + 1);
+    }
+
+    long count() {
+        return this._count;
+    }
+
+    String dump(final String flowName) {
+        final long count = this._count;
+        final int size = (int)Math.min(count, this._mask + 1);
+        final StringBuilder sb = new StringBuilder(64 + size * 96);
+        sb.append("flight recorder of flow(").append(flowName).append("), last ")
+            .append(size).append(" of ").append(count).append(" dispatched events:");
+        final SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss.SSS");
+        for (long pos = count - size; pos < count; pos++) {
+            final int idx = (int)pos & this._mask;
+            final EventHandler handler = this._handlers[idx];
+            final EventHandler next = this._nexts[idx];
+            final int flags = this._flags[idx];
+            sb.append("\n  #").append(pos).append(' ')
+                .append(format.format(new Date(this._timestamps[idx]))).append(' ')
+                .append(nameOf(handler)).append(" --").append(this._events[idx]);
+            if (this._codes[idx] >= 0) {
+                sb.append('#').append(this._codes[idx]);
+            }
+            sb.append("--> ");
+            if (null == next) {
+                sb.append("END");
+            }
+            else if (next == handler || next == BizStep.CURRENT_BIZSTEP) {
+                sb.append("(stay)");
+            }
+            else {
+                sb.append(nameOf(next));
+            }
+            if ((flags & EXCEPTION) != 0) {
+                sb.append(" EXCEPTION");
+            }
+            else if ((flags & HANDLED) == 0) {
+                sb.append(" UNHANDLED");
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String nameOf(final EventHandler handler) {
+        return null != handler ? handler.getName() : "null";
+    }
+
+    private static final int HANDLED = 1;
+    private static final int EXCEPTION = 2;
+
+    private static final AtomicLongFieldUpdater<FlightRecorder> COUNT_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(FlightRecorder.class, "_count");
+
+    private final int _mask;
+    private final long[] _timestamps;
+    private final int[] _codes;
+    private final int[] _flags;
+    private final String[] _events;
+    private final EventHandler[] _handlers;
+    private final EventHandler[] _nexts;
+
+    private volatile long _count = 0;
+}
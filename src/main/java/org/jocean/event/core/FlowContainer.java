@@ -3,11 +3,15 @@
  */
 package org.jocean.event.core;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -18,14 +22,15 @@ import org.jocean.event.api.FlowStateChangedListener;
 import org.jocean.event.api.internal.EventHandler;
 import org.jocean.event.api.internal.Eventable;
 import org.jocean.event.core.FlowContext.ReactorBuilder;
+import org.jocean.idiom.ArgsHandler;
 import org.jocean.idiom.COWCompositeSupport;
 import org.jocean.idiom.ExceptionUtils;
 import org.jocean.idiom.ExectionLoop;
-import org.jocean.idiom.InterfaceUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import rx.functions.Action1;
+import rx.functions.Func1;
 
 
 /**
@@ -48,10 +53,112 @@ public class FlowContainer {
 		return	new EventEngine() {
             @Override
             public EventReceiver create(final String name, final EventHandler init, final Object... reactors) {
-                return  createEventReceiverOf(name, init, reactors, exectionLoop);
+                return  createEventReceiverOf(name, init, reactors, exectionLoop, null);
             }};
 	}
 	
+	/**
+	 * flows created by engine dispatch events on virtual threads,
+	 * so handler can make blocking call without occupy platform thread 
+	 * (fallback to bounded pool of platform threads when JVM not support virtual thread)
+	 */
+	public EventEngine buildVirtualThreadEventEngine() {
+		return	buildEventEngine(new VirtualThreadExectionLoop(this.toString()));
+	}
+	
+	/**
+	 * flows created by engine are placed to one loop of group
+	 */
+	public EventEngine buildEventEngine(final ExectionLoopGroup loopGroup) {
+		return	new EventEngine() {
+            @Override
+            public EventReceiver create(final String name, final EventHandler init, final Object... reactors) {
+                return  createEventReceiverOf(name, init, reactors, loopGroup.select(), loopGroup);
+            }};
+	}
+	
+	/**
+	 * flows created by engine are placed to one loop of group, and can be bound to business key,
+	 * flows with same key are placed to same loop when group use CONSISTENT_HASH placement
+	 */
+	public KeyedEventEngine buildKeyedEventEngine(final ExectionLoopGroup loopGroup) {
+		return	new KeyedEventEngineImpl() {
+            @Override
+            public EventReceiver create(final String name, final EventHandler init, final Object... reactors) {
+                return  createEventReceiverOf(name, init, reactors, loopGroup.select(), loopGroup);
+            }
+
+            @Override
+            public EventReceiver createIfAbsent(final long key, final String name,
+                    final EventHandler init, final Object... reactors) {
+                return  createKeyedEventReceiverOf(key, name, init, reactors, loopGroup.select(key), loopGroup);
+            }};
+	}
+	
+	/**
+	 * flows created by engine can be bound to business key, 
+	 * the key space is shared by all KeyedEventEngine built by this container
+	 */
+	public KeyedEventEngine buildKeyedEventEngine(final ExectionLoop exectionLoop) {
+		return	new KeyedEventEngineImpl() {
+            @Override
+            public EventReceiver create(final String name, final EventHandler init, final Object... reactors) {
+                return  createEventReceiverOf(name, init, reactors, exectionLoop, null);
+            }
+
+            @Override
+            public EventReceiver createIfAbsent(final long key, final String name,
+                    final EventHandler init, final Object... reactors) {
+                return  createKeyedEventReceiverOf(key, name, init, reactors, exectionLoop, null);
+            }};
+	}
+	
+	public int getKeyedFlowCount() {
+		return this._keyedFlows.size();
+	}
+	
+	private abstract class KeyedEventEngineImpl implements KeyedEventEngine {
+        @Override
+        public EventReceiver getEventReceiver(final long key) {
+            final FlowContextImpl ctx = _keyedFlows.get(key);
+            return null != ctx ? ctx.getEventReceiver() : null;
+        }
+
+        @Override
+        public boolean acceptEvent(final long key, final String event, final Object... args) {
+            final FlowContextImpl ctx = _keyedFlows.get(key);
+            if (null == ctx) {
+                if ( LOG.isDebugEnabled() ) {
+                    LOG.debug("no flow bound to key({}), ignore event:({})", key, event);
+                }
+                return false;
+            }
+            return processKeyedEventOf(ctx, key, event, args);
+        }
+
+        @Override
+        public boolean acceptEvent(final long key, final Eventable eventable, final Object... args) {
+            final FlowContextImpl ctx = _keyedFlows.get(key);
+            if (null == ctx) {
+                if ( LOG.isDebugEnabled() ) {
+                    LOG.debug("no flow bound to key({}), ignore event:({})", key, eventable.event());
+                }
+                return false;
+            }
+            return processKeyedEventOf(ctx, key, eventable, args);
+        }
+        
+        private boolean processKeyedEventOf(final FlowContextImpl ctx, final long key, 
+        		final Object eventable, final Object[] args) {
+        	final int generation = ctx.generation();
+        	//	ctx may be recycled & reused for other key after lookup
+        	if (!ctx.hasBizKey() || ctx.getBizKey() != key) {
+        		return false;
+        	}
+        	return processEventOf(ctx, generation, eventable, args);
+        }
+	}
+	
     public void addReactorBuilder(
             final FlowContext.ReactorBuilder builder) {
         if ( null == builder ) {
@@ -62,6 +169,9 @@ public class FlowContainer {
                 LOG.warn("addReactorBuilder: builder {} has already added", 
                 		builder);
             }
+            else {
+            	updateReactorPlan();
+            }
         }
     }
 
@@ -72,33 +182,179 @@ public class FlowContainer {
         }
         else {
             _reactorBuilderSupport.removeComponent(builder);
+            updateReactorPlan();
         }
     }
+    
+    private synchronized void updateReactorPlan() {
+    	final List<ReactorBuilder> builders = new ArrayList<>();
+    	this._reactorBuilderSupport.foreachComponent(new Action1<ReactorBuilder>() {
+			@Override
+			public void call(final ReactorBuilder builder) {
+				builders.add(builder);
+			}});
+    	this._reactorPlan = new ReactorPlan(builders.toArray(new ReactorBuilder[builders.size()]), 
+    			this._reactorShapes);
+    }
 	
 	private EventReceiver createEventReceiverOf(
 	        final String name, 
 	        final EventHandler initHandler,
 	        final Object[] reactors,
-            final ExectionLoop exectionLoop
+            final ExectionLoop exectionLoop,
+            final ExectionLoopGroup loopGroup
 	        ) {
 		//	create new receiver
-		final FlowContextImpl ctx = initFlowCtx(name, reactors, initHandler, exectionLoop);
+		final FlowContextImpl ctx = createFlowCtx(name, initHandler, reactors, exectionLoop, loopGroup);
+		
+		notifyEventReceiverCreated(ctx, reactors);
+		
+		return	ctx.getEventReceiver();
+	}
+	
+	private EventReceiver createKeyedEventReceiverOf(
+			final long key,
+	        final String name, 
+	        final EventHandler initHandler,
+	        final Object[] reactors,
+            final ExectionLoop exectionLoop,
+            final ExectionLoopGroup loopGroup
+	        ) {
+		for (;;) {
+			final FlowContextImpl exist = this._keyedFlows.get(key);
+			if (null != exist) {
+				if (!exist.isDestroyed()) {
+					return exist.getEventReceiver();
+				}
+				//	flow is destroying, and its key will be removed soon, just remove it now 
+				this._keyedFlows.remove(key, exist);
+			}
+			
+			//	reserve key before create flow, so only one flow is built over caller's reactors,
+			//	and reactor builders never run under stripe's monitor
+			final KeyReservation reservation = new KeyReservation();
+			final KeyReservation other = this._keyReservations.putIfAbsent(key, reservation);
+			if (null != other) {
+				//	other caller is creating flow for key, wait it and re-check
+				other.await();
+				continue;
+			}
+			try {
+				final FlowContextImpl bound = this._keyedFlows.get(key);
+				if (null != bound && !bound.isDestroyed()) {
+					//	bound just before reserved
+					return bound.getEventReceiver();
+				}
+				if (null != bound) {
+					this._keyedFlows.remove(key, bound);
+				}
+				//	exception thrown by createFlowCtx is propagated, same as createEventReceiverOf
+				final FlowContextImpl created = createFlowCtx(name, initHandler, reactors, exectionLoop, loopGroup);
+				created.setBizKey(key);
+				this._keyedFlows.put(key, created);
+				notifyEventReceiverCreated(created, reactors);
+				return created.getEventReceiver();
+			}
+			finally {
+				this._keyReservations.remove(key, reservation);
+				reservation.release();
+			}
+		}
+	}
+	
+	/**
+	 * bind restored flow to key if key is free, through reservation as createKeyedEventReceiverOf
+	 */
+	private void bindRestoredKey(final long key, final FlowContextImpl ctx) {
+		final KeyReservation reservation = new KeyReservation();
+		if (null != this._keyReservations.putIfAbsent(key, reservation)) {
+			return;
+		}
+		try {
+			final FlowContextImpl bound = this._keyedFlows.get(key);
+			if (null == bound || bound.isDestroyed()) {
+				ctx.setBizKey(key);
+				this._keyedFlows.put(key, ctx);
+			}
+		}
+		finally {
+			this._keyReservations.remove(key, reservation);
+			reservation.release();
+		}
+	}
+	
+	//	key being bound by one caller, others wait until it released
+	private static final class KeyReservation {
 		
-        final EventReceiver newReceiver = genEventReceiverWithCtx(name, ctx);
+		void await() {
+			boolean interrupted = false;
+			while (this._latch.getCount() > 0) {
+				try {
+					this._latch.await();
+				}
+				catch (InterruptedException e) {
+					interrupted = true;
+				}
+			}
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+		
+		void release() {
+			this._latch.countDown();
+		}
+		
+		private final CountDownLatch _latch = new CountDownLatch(1);
+	}
+	
+	private FlowContextImpl createFlowCtx(
+	        final String name, 
+	        final EventHandler initHandler,
+	        final Object[] reactors,
+            final ExectionLoop exectionLoop,
+            final ExectionLoopGroup loopGroup
+	        ) {
+		final FlowContextImpl ctx = initFlowCtx(name, reactors, initHandler, exectionLoop, loopGroup);
+		
+        ctx.setEventReceiver(genEventReceiverWithCtx(name, ctx));
         
-        final FlowLifecycleListener lifecycleListener = 
-        		InterfaceUtils.compositeIncludeType(FlowLifecycleListener.class, reactors);
-		if (null!=lifecycleListener) {
+		if ( null == this._flowContexts.putIfAbsent(ctx.getId(), ctx) ) {
+    		// add new context
+    		this._totalFlowCount.incrementAndGet();
+		}
+		return ctx;
+	}
+	
+	private void notifyEventReceiverCreated(final FlowContextImpl ctx, final Object[] reactors) {
+		for (FlowLifecycleListener lifecycleListener : 
+				this._reactorPlan.shapeOfCreated(reactors).flowLifecycleListeners(reactors)) {
 			try {
-				lifecycleListener.afterEventReceiverCreated(newReceiver);
+				lifecycleListener.afterEventReceiverCreated(ctx.getEventReceiver());
 			}
 			catch (Exception e) {
 				LOG.error("exception when invoke flow {}'s afterEventReceiverCreated, detail: {}",
-						name, ExceptionUtils.exception2detail(e));
+						ctx, ExceptionUtils.exception2detail(e));
 			}
 		}
-		
-		return	newReceiver;
+	}
+	
+	private static boolean processEventOf(final FlowContextImpl ctx, final int generation, 
+			final Object eventable, final Object[] args) {
+        try {
+            return ctx.processEvent(generation, eventable, args);
+        }
+        catch (final Throwable e) {
+            LOG.error("exception when flow({})'s processEvent, detail:{}, try end flow", 
+                    ctx, ExceptionUtils.exception2detail(e));
+            //	never end flow which has been recycled & reused
+            if (generation == ctx.generation()) {
+                ctx.dumpFlightRecorder("end by exception when processEvent");
+                ctx.destroy(eventable instanceof Eventable ? ((Eventable)eventable).event() : (String)eventable, 
+                		args);
+            }
+            return false;
+        }
 	}
 	
 	/**
@@ -106,37 +362,61 @@ public class FlowContainer {
 	 * @param ctx
 	 * @return
 	 */
-	private EventReceiver genEventReceiverWithCtx(final String name, final FlowContextImpl ctx) {
-		return	new EventReceiver() {
+	private BatchEventReceiver genEventReceiverWithCtx(final String name, final FlowContextImpl ctx) {
+		//	receiver is bound to current use of ctx, and rejected after ctx recycled
+		final int generation = ctx.generation();
+		return	new FlowEventReceiver() {
 
 			@Override
 			public boolean acceptEvent(final String event, final Object... args) {
-		        try {
-		            return ctx.processEvent(event, args);
-		        }
-		        catch (final Throwable e) {
-		            LOG.error("exception when flow({})'s processEvent, detail:{}, try end flow", 
-		                    this, ExceptionUtils.exception2detail(e));
-		            ctx.destroy(event, args);
-//		            throw e;
-		            return false;
-		        }
+		        return processEventOf(ctx, generation, event, args);
 			}
 
             @Override
             public boolean acceptEvent(final Eventable eventable, final Object... args) {
+                return processEventOf(ctx, generation, eventable, args);
+            }
+            
+            @Override
+            public boolean[] acceptEvents(final String[] events, final Object[][] args) {
+                return processEvents(events, args);
+            }
+            
+            @Override
+            public boolean[] acceptEvents(final Eventable[] eventables, final Object[][] args) {
+                return processEvents(eventables, args);
+            }
+            
+            private boolean[] processEvents(final Object[] eventables, final Object[][] args) {
                 try {
-                    return ctx.processEvent(eventable, args);
+                    return ctx.processEvents(generation, eventables, args);
                 }
                 catch (final Throwable e) {
-                    LOG.error("exception when flow({})'s processEvent, detail:{}, try end flow", 
+                    LOG.error("exception when flow({})'s processEvents, detail:{}, try end flow", 
                             this, ExceptionUtils.exception2detail(e));
-                    ctx.destroy(eventable.event(), args);
-//                    throw e;
-                    return false;
+                    if (generation == ctx.generation()) {
+                        ctx.dumpFlightRecorder("end by exception when processEvents");
+                        ctx.destroy(null, null);
+                    }
+                    return new boolean[eventables.length];
                 }
             }
             
+            @Override
+            public FlowContextImpl flowContext() {
+                return ctx;
+            }
+            
+            @Override
+            public int getPendingEventCount() {
+                return ctx.getPendingEventCount();
+            }
+            
+            @Override
+            public boolean isAboveHighWatermark() {
+                return ctx.isAboveHighWatermark();
+            }
+            
             @Override
             public String toString() {
                 return null != name 
@@ -166,55 +446,698 @@ public class FlowContainer {
 		return dealCompletedCount.get();
 	}
 
+	/**
+	 * @return count of flows shed by admission control (see setMaxLiveFlows/setMaxActiveFlows)
+	 */
 	public long getDealBypassCount() {
 		return dealBypassCount.get();
 	}
 
+	public int getMailboxRingSize() {
+		return this._mailboxRingSize;
+	}
+
+	/**
+	 * @param ringSize 0 means flow created later use unbounded linked mailbox (default),
+	 * 		otherwise use ring of preallocated & reusable envelopes with ringSize (round up to power of 2) slots,
+	 * 		which allocate nothing when push & dispatch event, and reject event when ring is full
+	 */
+	public void setMailboxRingSize(final int ringSize) {
+		this._mailboxRingSize = ringSize;
+		//	pooled flows has mailbox of previous ring size
+		setFlowPoolSize(getFlowPoolSize());
+	}
+
+	public int getFlowPoolSize() {
+		final FlowContextPool pool = this._flowPool;
+		return null != pool ? this._flowPoolSize : 0;
+	}
+
+	/**
+	 * opt-in recycling of destroyed flows: up to poolSize destroyed flow contexts are kept and reused
+	 *  by flows created since now, 0 means disable pooling (default).
+	 *  EventReceiver of recycled flow reject all events, 
+	 *  but FlowContext kept by reactors (eg: StatusReactor, BackpressureListener) SHOULD NOT be used
+	 *  after flow destroyed.
+	 *  flows with idle timeout, time to live or scheduled events are never recycled.
+	 */
+	public void setFlowPoolSize(final int poolSize) {
+		this._flowPoolSize = poolSize;
+		this._flowPool = poolSize > 0 ? new FlowContextPool(poolSize) : null;
+	}
+
+	public int getPooledFlowCount() {
+		final FlowContextPool pool = this._flowPool;
+		return null != pool ? pool.size() : 0;
+	}
+
+	public long getReusedFlowCount() {
+		final FlowContextPool pool = this._flowPool;
+		return null != pool ? pool.reusedCount() : 0;
+	}
+
+	public int getMaxEventsPerDispatch() {
+		return this._maxEventsPerDispatch;
+	}
+
+	/**
+	 * @param maxEvents max events dispatched by one flow before it yield its exectionLoop, 
+	 * 		0 means unlimited
+	 */
+	public void setMaxEventsPerDispatch(final int maxEvents) {
+		this._maxEventsPerDispatch = maxEvents;
+	}
+
+	public long getMaxNanosPerDispatch() {
+		return this._maxNanosPerDispatch;
+	}
+
+	/**
+	 * @param maxNanos max nanoseconds spent by one flow before it yield its exectionLoop, 
+	 * 		0 means unlimited
+	 */
+	public void setMaxNanosPerDispatch(final long maxNanos) {
+		this._maxNanosPerDispatch = maxNanos;
+	}
+
+	public long getIdleTimeout() {
+		return this._idleTimeout;
+	}
+
+	/**
+	 * @param idleTimeoutMillis flow created later not actived (or handler not changed) for idleTimeoutMillis
+	 * 		will be destroyed in its ExectionLoop, with end reason FlowExpiredReason.IDLE_TIMEOUT,
+	 * 		0 means never (default)
+	 */
+	public void setIdleTimeout(final long idleTimeoutMillis) {
+		this._idleTimeout = idleTimeoutMillis;
+	}
+
+	public long getTimeToLive() {
+		return this._timeToLive;
+	}
+
+	/**
+	 * @param timeToLiveMillis flow created later alive for timeToLiveMillis
+	 * 		will be destroyed in its ExectionLoop, with end reason FlowExpiredReason.TIME_TO_LIVE_EXCEEDED,
+	 * 		0 means never (default)
+	 */
+	public void setTimeToLive(final long timeToLiveMillis) {
+		this._timeToLive = timeToLiveMillis;
+	}
+
+	public int getMaxLiveFlows() {
+		return this._admissionControl.getMaxLiveFlows();
+	}
+
+	/**
+	 * @param maxLiveFlows new flow exceed limit is destroyed at its first-time activation, 
+	 * 		0 means unlimited (default)
+	 */
+	public void setMaxLiveFlows(final int maxLiveFlows) {
+		this._admissionControl.setMaxLiveFlows(maxLiveFlows);
+	}
+
+	public int getMaxActiveFlows() {
+		return this._admissionControl.getMaxActiveFlows();
+	}
+
+	public AdmissionPolicy getAdmissionPolicy() {
+		return this._admissionControl.getPolicy();
+	}
+
+	/**
+	 * @param maxActiveFlows max flows dispatching (or waiting to dispatch) events concurrently, 
+	 * 		0 means unlimited (default)
+	 * @param policy shed or queue new flow whose first-time activation exceed limit
+	 */
+	public void setMaxActiveFlows(final int maxActiveFlows, final AdmissionPolicy policy) {
+		this._admissionControl.setMaxActiveFlows(maxActiveFlows, policy);
+	}
+
+	public long getActiveFlowCount() {
+		return this._admissionControl.getActiveFlowCount();
+	}
+
+	public long getActivationCount() {
+		return this._admissionControl.getActivationCount();
+	}
+
+	public int getQueuedFlowCount() {
+		return this._admissionControl.getQueuedFlowCount();
+	}
+
+	public long getShedFlowCount() {
+		return this._admissionControl.getShedFlowCount();
+	}
+
+	/**
+	 * @return metrics of flows, null when metrics disabled
+	 */
+	public FlowMetrics getMetrics() {
+		return this._metrics;
+	}
+
+	/**
+	 * @param enabled flows created later record metrics into getMetrics(), 
+	 * 		flow created when metrics disabled pay nothing for it (default)
+	 */
+	public void setMetricsEnabled(final boolean enabled) {
+		if (!enabled) {
+			this._metrics = null;
+		}
+		else if (null == this._metrics) {
+			this._metrics = new FlowMetrics();
+		}
+	}
+
+	public int getMailboxCapacity() {
+		return this._mailboxCapacity;
+	}
+
+	/**
+	 * @param capacity max pending events of each flow created later, 0 means unlimited (default)
+	 */
+	public void setMailboxCapacity(final int capacity) {
+		this._mailboxCapacity = capacity;
+	}
+
+	public int getPriorityCapacity() {
+		return this._priorityCapacity;
+	}
+
+	/**
+	 * @param capacity max pending priority events of each flow created later, 
+	 *  0 means same as mailbox capacity (default), so priority lane is bounded when mailbox is
+	 */
+	public void setPriorityCapacity(final int capacity) {
+		this._priorityCapacity = capacity;
+	}
+
+	public long getContainerPendingCapacity() {
+		return this._containerPendingCapacity;
+	}
+
+	/**
+	 * @param capacity max pending events of all flows created later, 0 means unlimited (default)
+	 */
+	public void setContainerPendingCapacity(final long capacity) {
+		this._containerPendingCapacity = capacity;
+	}
+
+	/**
+	 * @return pending events of all flows counted by container capacity
+	 */
+	public long getPendingEventCount() {
+		return this._pendingEventCount.get();
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return this._overflowPolicy;
+	}
+
+	/**
+	 * @param policy applied when flow created later exceed mailbox capacity or container capacity
+	 * @param blockTimeoutMillis max wait time of OverflowPolicy.BLOCK
+	 */
+	public void setOverflowPolicy(final OverflowPolicy policy, final long blockTimeoutMillis) {
+		this._overflowPolicy = null != policy ? policy : OverflowPolicy.REJECT;
+		this._blockTimeoutMillis = blockTimeoutMillis;
+	}
+
+	/**
+	 * @param high pending events count of flow to notify onHighWatermark, 0 means no watermark (default)
+	 * @param low pending events count of flow to notify onLowWatermark
+	 */
+	public void setPendingWatermark(final int high, final int low) {
+		this._highWatermark = high;
+		this._lowWatermark = low;
+	}
+
+	public int getFlightRecorderSize() {
+		return this._flightRecorderSize;
+	}
+
+	/**
+	 * @param size count of recent dispatched events recorded by each flow created since now,
+	 *  0 means disable flight recorder. default is 16
+	 */
+	public void setFlightRecorderSize(final int size) {
+		this._flightRecorderSize = size;
+	}
+
+	/**
+	 * @return recent dispatched events of live flow with flowId, 
+	 *  or null if flow not exist or flight recorder disabled
+	 */
+	public String dumpFlightRecorder(final int flowId) {
+		final FlowContextImpl ctx = this._flowContexts.get(flowId);
+		return null != ctx ? ctx.getFlightRecord() : null;
+	}
+
+	public EventJournal getEventJournal() {
+		return this._journal;
+	}
+
+	/**
+	 * journal events accepted by flows created since now, null means disable journal (default).
+	 *  see EventJournal.replay for crash recovery
+	 */
+	public void setEventJournal(final EventJournal journal) {
+		this._journal = journal;
+	}
+
+	public void addBackpressureListener(final BackpressureListener listener) {
+		if ( null == listener ) {
+			LOG.warn("addBackpressureListener: listener is null, just ignore");
+		}
+		else {
+			if ( !this._backpressureListenerSupport.addComponent(listener) ) {
+				LOG.warn("addBackpressureListener: listener {} has already added", 
+						listener);
+			}
+		}
+	}
+
+	public void removeBackpressureListener(final BackpressureListener listener) {
+		if ( null == listener ) {
+			LOG.warn("removeBackpressureListener: listener is null, just ignore");
+		}
+		else {
+			this._backpressureListenerSupport.removeComponent(listener);
+		}
+	}
+
+	/**
+	 * write current handler's name, timing, end reason and pending events of all live flows
+	 *  to snapshot file, flows still busy after timeoutMillis are skipped.
+	 *  scheduled events (by EventScheduler) are not included.
+	 * @return count of flows written
+	 */
+	public int snapshotTo(final File file, final ArgsSerializer serializer, final long timeoutMillis) 
+			throws IOException {
+		final List<byte[]> records = new ArrayList<>();
+		for (FlowContextImpl ctx : this._flowContexts) {
+			final FlowSnapshot snapshot = ctx.captureSnapshot(timeoutMillis);
+			if (null == snapshot) {
+				if (!ctx.isDestroyed()) {
+					LOG.warn("flow({}) still busy after {} ms, skip it in snapshot {}", 
+							ctx, timeoutMillis, file);
+				}
+				continue;
+			}
+			try {
+				records.add(snapshot.encode(serializer));
+			}
+			catch (Exception e) {
+				LOG.warn("exception when encode snapshot of flow({}), skip it, detail: {}", 
+						ctx, ExceptionUtils.exception2detail(e));
+			}
+		}
+		FlowSnapshot.writeTo(file, records);
+		return records.size();
+	}
+	
+	/**
+	 * re-create flows in snapshot file by restorer (via engine.create),
+	 *  then restore timing, end reason and biz key, and re-push pending events in order.
+	 *  pending event's name registered in EventCodeRegistry is re-pushed as CodedEventable.
+	 * @param engine SHOULD be built by this container
+	 * @return count of flows restored
+	 */
+	public int restoreFrom(final File file, final EventEngine engine, 
+			final ArgsSerializer serializer, final FlowRestorer restorer) throws IOException {
+		int restored = 0;
+		for (byte[] record : FlowSnapshot.readFrom(file)) {
+			try {
+				final FlowSnapshot snapshot = FlowSnapshot.decode(record, serializer);
+				final EventReceiver receiver = restorer.restore(engine, snapshot.name(), snapshot.handlerName());
+				if (null == receiver) {
+					continue;
+				}
+				if (receiver instanceof FlowEventReceiver) {
+					final FlowContextImpl ctx = ((FlowEventReceiver)receiver).flowContext();
+					ctx.restoreSnapshot(snapshot);
+					if (snapshot.hasBizKey() && !ctx.hasBizKey()) {
+						bindRestoredKey(snapshot.bizKey(), ctx);
+					}
+				}
+				final String[] events = snapshot.events();
+				final Object[][] args = snapshot.args();
+				for (int idx = 0; idx < events.length; idx++) {
+					final CodedEventable coded = EventCodeRegistry.eventableOf(
+							EventCodeRegistry.codeOf(events[idx]));
+					if (null != coded) {
+						receiver.acceptEvent(coded, args[idx]);
+					}
+					else {
+						receiver.acceptEvent(events[idx], args[idx]);
+					}
+				}
+				restored++;
+			}
+			catch (Exception e) {
+				LOG.warn("exception when restore flow from snapshot {}, skip it, detail: {}", 
+						file, ExceptionUtils.exception2detail(e));
+			}
+		}
+		return restored;
+	}
+	
+	/**
+	 * @param flowId
+	 * @return live flow with flowId, or null if not exist or has been destroyed
+	 */
+	public FlowContext getFlowContext(final int flowId) {
+		return this._flowContexts.get(flowId);
+	}
+
+	/**
+	 * @param flowId
+	 * @return EventReceiver of live flow with flowId, or null if not exist or has been destroyed
+	 */
+	public EventReceiver getEventReceiver(final int flowId) {
+		final FlowContextImpl ctx = this._flowContexts.get(flowId);
+		return null != ctx ? ctx.getEventReceiver() : null;
+	}
+
+	/**
+	 * @return weakly consistent iterator of live flows, 
+	 * 		it never block creating or destroying of flows
+	 */
+	public Iterator<FlowContext> getAllFlowContext() {
+		final Iterator<FlowContextImpl> iter = this._flowContexts.iterator();
+		return new Iterator<FlowContext>() {
+			@Override
+			public boolean hasNext() {
+				return iter.hasNext();
+			}
+
+			@Override
+			public FlowContext next() {
+				return iter.next();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}};
+	}
+
+	/**
+	 * @return weakly consistent iterator of live flows' EventReceiver, 
+	 * 		it never block creating or destroying of flows
+	 */
+	public Iterator<EventReceiver> getAllEventReceiver() {
+		final Iterator<FlowContextImpl> iter = this._flowContexts.iterator();
+		return new Iterator<EventReceiver>() {
+			@Override
+			public boolean hasNext() {
+				return iter.hasNext();
+			}
+
+			@Override
+			public EventReceiver next() {
+				return iter.next().getEventReceiver();
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}};
+	}
+
+	/**
+	 * move live flow with flowId to another exectionLoop, eg: rebalance hot flows
+	 * @return false if flow not exist or has been destroyed
+	 */
+	public boolean switchExectionLoop(final int flowId, final ExectionLoop exectionLoop) {
+		final FlowContextImpl ctx = this._flowContexts.get(flowId);
+		return null != ctx ? ctx.switchExectionLoop(exectionLoop) : false;
+	}
+
+	/**
+	 * push event to all live flows, see broadcast(Func1, Eventable, Object...)
+	 * @return count of flows which event delivered to
+	 */
+	public int broadcast(final String event, final Object... args) {
+		return broadcastOf(null, event, args);
+	}
+
+	/**
+	 * push event to all live flows, see broadcast(Func1, Eventable, Object...)
+	 * @return count of flows which event delivered to
+	 */
+	public int broadcast(final Eventable eventable, final Object... args) {
+		return broadcastOf(null, eventable, args);
+	}
+
+	/**
+	 * push event to live flows whose current handler's name is handlerName (eg: name of BizStep)
+	 * @return count of flows which event delivered to
+	 */
+	public int broadcastToHandler(final String handlerName, final Eventable eventable, final Object... args) {
+		return broadcastOf(new Func1<FlowContext, Boolean>() {
+			@Override
+			public Boolean call(final FlowContext ctx) {
+				final EventHandler handler = ctx.getCurrentHandler();
+				return null != handler && handlerName.equals(handler.getName());
+			}}, eventable, args);
+	}
+
+	/**
+	 * push event to live flows matched filter (null means all), 
+	 *  flows are grouped by their exectionLoop, and each exectionLoop receive one batch task,
+	 *  which push event to its flows and dispatch them directly in the loop,
+	 *  batch task yield the loop (re-submit for rest flows) after maxEventsPerDispatch flows
+	 *  or maxNanosPerDispatch spent, so broadcast to many flows never monopolize the loop.
+	 *  args is shared by all flows: if eventable is ArgsHandler, args is held (beforeInvoke) by broadcast
+	 *  until all batches finished, and each flow invoke beforeInvoke/afterInvoke as normal event.
+	 * @return count of flows which event delivered to
+	 */
+	public int broadcast(final Func1<FlowContext, Boolean> filter, final Eventable eventable, 
+			final Object... args) {
+		return broadcastOf(filter, eventable, args);
+	}
+
+	private int broadcastOf(final Func1<FlowContext, Boolean> filter, final Object eventable, 
+			final Object[] args) {
+		final Map<ExectionLoop, BroadcastBatch> batches = new IdentityHashMap<>();
+		int count = 0;
+		for (FlowContextImpl ctx : this._flowContexts) {
+			if (ctx.isDestroyed()) {
+				continue;
+			}
+			if (null != filter) {
+				try {
+					if (!Boolean.TRUE.equals(filter.call(ctx))) {
+						continue;
+					}
+				}
+				catch (Exception e) {
+					LOG.warn("exception when broadcast filter flow({}), skip it, detail: {}", 
+							ctx, ExceptionUtils.exception2detail(e));
+					continue;
+				}
+			}
+			final ExectionLoop exectionLoop = ctx.getExectionLoop();
+			BroadcastBatch batch = batches.get(exectionLoop);
+			if (null == batch) {
+				batch = new BroadcastBatch(exectionLoop, eventable, 
+						this._maxEventsPerDispatch, this._maxNanosPerDispatch);
+				batches.put(exectionLoop, batch);
+			}
+			batch.add(ctx);
+			count++;
+		}
+		if (batches.isEmpty()) {
+			return 0;
+		}
+		final BroadcastArgs shared = new BroadcastArgs(eventable, args, batches.size());
+		for (Map.Entry<ExectionLoop, BroadcastBatch> entry : batches.entrySet()) {
+			entry.getValue().setShared(shared);
+			entry.getKey().submit(entry.getValue());
+		}
+		return count;
+	}
+
+	//	args shared by all batches of one broadcast, released when last batch finished
+	private static final class BroadcastArgs {
+		
+		BroadcastArgs(final Object eventable, final Object[] args, final int batches) {
+			this._eventable = eventable;
+			Object[] held = args;
+			if (eventable instanceof ArgsHandler) {
+				try {
+					held = ((ArgsHandler)eventable).beforeInvoke(args);
+				}
+				catch (Exception e) {
+					LOG.warn("exception when broadcast's beforeInvoke for event:({}), detail: {}", 
+							eventable, ExceptionUtils.exception2detail(e));
+				}
+			}
+			this._args = held;
+			this._remaining = new AtomicInteger(batches);
+		}
+		
+		void batchFinished() {
+			if (0 == this._remaining.decrementAndGet() && this._eventable instanceof ArgsHandler) {
+				try {
+					((ArgsHandler)this._eventable).afterInvoke(this._args);
+				}
+				catch (Exception e) {
+					LOG.warn("exception when broadcast's afterInvoke for event:({}), detail: {}", 
+							this._eventable, ExceptionUtils.exception2detail(e));
+				}
+			}
+		}
+		
+		private final Object _eventable;
+		private final Object[] _args;
+		private final AtomicInteger _remaining;
+	}
+	
+	//	flows of one exectionLoop, with generation when they are matched
+	private static final class BroadcastBatch implements Runnable {
+		
+		BroadcastBatch(final ExectionLoop exectionLoop, final Object eventable, 
+				final int maxFlows, final long maxNanos) {
+			this._exectionLoop = exectionLoop;
+			this._eventable = eventable;
+			this._maxFlows = maxFlows;
+			this._maxNanos = maxNanos;
+		}
+		
+		void add(final FlowContextImpl ctx) {
+			if (this._count == this._flows.length) {
+				this._flows = Arrays.copyOf(this._flows, this._count << 1);
+				this._generations = Arrays.copyOf(this._generations, this._count << 1);
+			}
+			this._flows[this._count] = ctx;
+			this._generations[this._count] = ctx.generation();
+			this._count++;
+		}
+		
+		void setShared(final BroadcastArgs shared) {
+			this._shared = shared;
+		}
+		
+		@Override
+		public void run() {
+			boolean finished = true;
+			try {
+				final long beginNanos = this._maxNanos > 0 ? System.nanoTime() : 0;
+				int dispatched = 0;
+				while (this._next < this._count) {
+					final int idx = this._next++;
+					processEventOf(this._flows[idx], this._generations[idx], this._eventable, this._shared._args);
+					this._flows[idx] = null;
+					dispatched++;
+					if ( this._next < this._count 
+						&& ( (this._maxFlows > 0 && dispatched >= this._maxFlows)
+						|| (this._maxNanos > 0 && (System.nanoTime() - beginNanos) >= this._maxNanos) ) ) {
+						//	budget used up, yield exectionLoop and continue rest flows later
+						this._exectionLoop.submit(this);
+						finished = false;
+						return;
+					}
+				}
+			}
+			catch (Exception e) {
+				LOG.warn("exception when broadcast event:({}), skip rest {} flows, detail: {}", 
+						this._eventable, this._count - this._next, ExceptionUtils.exception2detail(e));
+			}
+			finally {
+				if (finished) {
+					this._shared.batchFinished();
+				}
+			}
+		}
+		
+		private final ExectionLoop _exectionLoop;
+		private final Object _eventable;
+		private final int _maxFlows;
+		private final long _maxNanos;
+		private BroadcastArgs _shared;
+		private FlowContextImpl[] _flows = new FlowContextImpl[16];
+		private int[] _generations = new int[16];
+		private int _count = 0;
+		private int _next = 0;
+	}
+
 	private FlowContextImpl initFlowCtx(
 			final String 	name,
 	        final Object[] 	reactors, 
 	        final EventHandler initHandler,
-            final ExectionLoop exectionLoop 
+            final ExectionLoop exectionLoop,
+            final ExectionLoopGroup loopGroup
 	        ) {
-		final FlowContextImpl newCtx = 
-	        new FlowContextImpl(name, exectionLoop, null);
+		final FlowContextPool pool = this._flowPool;
+		FlowContextImpl newCtx = null != pool ? pool.acquire() : null;
+		if (null != newCtx) {
+			newCtx.reuse(name, exectionLoop, this._admissionControl);
+		}
+		else {
+			newCtx = new FlowContextImpl(name, exectionLoop, this._admissionControl, this._mailboxRingSize);
+		}
+		if (null != pool) {
+			newCtx.setPool(pool);
+		}
 		
-		newCtx.setReactors(addReactors(reactors, newCtx));
-        newCtx.setCurrentHandler(initHandler, null, null);
-				
-		if ( this._flowContexts.add(newCtx) ) {
-    		// add new context
-    		this._totalFlowCount.incrementAndGet();
+		if (null != loopGroup) {
+			newCtx.bindExectionLoopGroup(loopGroup);
 		}
+		newCtx.setDispatchBudget(this._maxEventsPerDispatch, this._maxNanosPerDispatch);
+		newCtx.setMetrics(this._metrics);
+		if (this._mailboxCapacity > 0 
+			|| this._containerPendingCapacity > 0
+			|| this._highWatermark > 0) {
+			newCtx.setPendingLimiter(new PendingLimiter(newCtx, 
+					this._mailboxCapacity, 
+					this._overflowPolicy, 
+					this._blockTimeoutMillis,
+					this._containerPendingCapacity > 0 ? this._pendingEventCount : null,
+					this._containerPendingCapacity,
+					this._highWatermark,
+					this._lowWatermark,
+					this._backpressureListener));
+		}
+		final int priorityCapacity = this._priorityCapacity > 0 
+				? this._priorityCapacity 
+				: this._mailboxCapacity;
+		if (priorityCapacity > 0) {
+			newCtx.setPriorityLimiter(new PendingLimiter(newCtx, 
+					priorityCapacity, OverflowPolicy.REJECT, 0, null, 0, 0, 0, null));
+		}
+		if (this._flightRecorderSize > 0) {
+			newCtx.setFlightRecorder(new FlightRecorder(this._flightRecorderSize));
+		}
+		final ReactorPlan plan = this._reactorPlan;
+		final Object[] composed;
+		try {
+			composed = plan.compose(reactors, hookOnFlowCtxDestoryed(newCtx), newCtx);
+		}
+		catch (RuntimeException e) {
+			//	fail creation of flow, as builder's exception before
+			LOG.warn("exception when build reactors for flow({}), create failed, detail: {}", 
+					name, ExceptionUtils.exception2detail(e));
+			newCtx.unbindExectionLoopGroup();
+			throw e;
+		}
+		newCtx.setReactors(composed, plan.shapeOf(composed));
+        newCtx.setCurrentHandler(initHandler, null, null);
+        if (null != this._journal) {
+        	newCtx.setJournal(this._journal, null != initHandler ? initHandler.getName() : null);
+        }
+        if (this._idleTimeout > 0 || this._timeToLive > 0) {
+        	newCtx.setExpiry(HashedTimingWheel.shared(), this._idleTimeout, this._timeToLive);
+        }
 		
         incDealHandledCount();
         
 		return	newCtx;
 	}
 
-	private Object[] addReactors(final Object[] reactors,
-			final FlowContextImpl newCtx) {
-		if (this._reactorBuilderSupport.isEmpty()) {
-			final Object[] newReactors = Arrays.copyOf(reactors, reactors.length + 1);
-			newReactors[newReactors.length-1] = hookOnFlowCtxDestoryed(newCtx);
-			return newReactors;
-		}
-		else {
-			final List<Object> newReactors = new ArrayList<>();
-			newReactors.addAll(Arrays.asList(reactors));
-			newReactors.add(hookOnFlowCtxDestoryed(newCtx));
-			this._reactorBuilderSupport.foreachComponent(new Action1<ReactorBuilder> () {
-				@Override
-				public void call(final ReactorBuilder builder) {
-					final Object[] ret = builder.buildReactors(newCtx);
-					if (null!=ret && ret.length>0) {
-						newReactors.addAll(Arrays.asList(ret));
-					}
-				}});
-			return newReactors.toArray();
-		}
-	}
-
 	private FlowStateChangedListener<EventHandler> hookOnFlowCtxDestoryed(
 			final FlowContextImpl ctx) {
 		return new FlowStateChangedListener<EventHandler>() {
@@ -232,14 +1155,42 @@ public class FlowContainer {
 	}
 	
 	private void onFlowCtxDestroyed(final FlowContextImpl ctx) {
-		if ( this._flowContexts.remove(ctx) ) {
+		ctx.journalEnded();
+		
+		if ( this._flowContexts.remove(ctx.getId(), ctx) ) {
 			//	移除操作有效
 			this._totalFlowCount.decrementAndGet();
 		}
 		
+		if ( ctx.hasBizKey() ) {
+			this._keyedFlows.remove(ctx.getBizKey(), ctx);
+		}
+		
+		ctx.unbindExectionLoopGroup();
+		
 		incDealCompletedCount();
 	}
 
+	private final BackpressureListener _backpressureListener = new BackpressureListener() {
+		@Override
+		public void onHighWatermark(final FlowContext ctx, final int pendingCount) {
+			_backpressureListenerSupport.foreachComponent(new Action1<BackpressureListener>() {
+				@Override
+				public void call(final BackpressureListener listener) {
+					listener.onHighWatermark(ctx, pendingCount);
+				}});
+		}
+
+		@Override
+		public void onLowWatermark(final FlowContext ctx, final int pendingCount) {
+			_backpressureListenerSupport.foreachComponent(new Action1<BackpressureListener>() {
+				@Override
+				public void call(final BackpressureListener listener) {
+					listener.onLowWatermark(ctx, pendingCount);
+				}});
+		}
+	};
+
 	private void incDealHandledCount() {
 		dealHandledCount.incrementAndGet();
 	}
@@ -256,18 +1207,60 @@ public class FlowContainer {
 		return this.name + "-" + this._id;
 	}
 
-	private	final Set<FlowContextImpl> _flowContexts = 
-			new ConcurrentSkipListSet<FlowContextImpl>();
+	private	final StripedLongMap<FlowContextImpl> _flowContexts = 
+			new StripedLongMap<FlowContextImpl>();
+	
+	private	final StripedLongMap<FlowContextImpl> _keyedFlows = 
+			new StripedLongMap<FlowContextImpl>();
+	
+	//	keys being bound now, see createKeyedEventReceiverOf
+	private	final StripedLongMap<KeyReservation> _keyReservations = 
+			new StripedLongMap<KeyReservation>();
 	
 	private final String		name;
 	private	final int			_id;
 	
+    //	shapes of reactor classes used by this container's flows
+    private final ReactorShape.Cache _reactorShapes = new ReactorShape.Cache();
+    
+    //	replaced when builder set changed
+    private volatile ReactorPlan _reactorPlan = new ReactorPlan(new ReactorBuilder[0], this._reactorShapes);
+    
     private final COWCompositeSupport<FlowContext.ReactorBuilder> _reactorBuilderSupport
     	= new COWCompositeSupport<FlowContext.ReactorBuilder>();
 	
 	private	final AtomicInteger	_totalFlowCount = new AtomicInteger(0);
 	
+	
 	private	final AtomicLong dealHandledCount = new AtomicLong(0);
 	private	final AtomicLong dealCompletedCount = new AtomicLong(0);
 	private	final AtomicLong dealBypassCount = new AtomicLong(0);
+	
+	private	final AdmissionControl _admissionControl = 
+			new AdmissionControl(this._totalFlowCount, this.dealBypassCount);
+	
+	private volatile FlowMetrics _metrics = null;
+	private volatile EventJournal _journal = null;
+	private volatile int	_flightRecorderSize = FlightRecorder.DEFAULT_SIZE;
+	private volatile int	_flowPoolSize = 0;
+	private volatile FlowContextPool _flowPool = null;
+	
+	private volatile int	_mailboxRingSize = 0;
+	private volatile int	_maxEventsPerDispatch = FlowContextImpl.DEFAULT_MAX_EVENTS_PER_DISPATCH;
+	private volatile long	_maxNanosPerDispatch = 0;
+	
+	private volatile long	_idleTimeout = 0;
+	private volatile long	_timeToLive = 0;
+	
+	private volatile int	_mailboxCapacity = 0;
+	private volatile int	_priorityCapacity = 0;
+	private volatile long	_containerPendingCapacity = 0;
+	private volatile OverflowPolicy	_overflowPolicy = OverflowPolicy.REJECT;
+	private volatile long	_blockTimeoutMillis = 0;
+	private volatile int	_highWatermark = 0;
+	private volatile int	_lowWatermark = 0;
+	private	final AtomicLong _pendingEventCount = new AtomicLong(0);
+	
+    private final COWCompositeSupport<BackpressureListener> _backpressureListenerSupport
+    	= new COWCompositeSupport<BackpressureListener>();
 }
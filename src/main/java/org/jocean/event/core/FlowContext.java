@@ -11,6 +11,8 @@ import org.jocean.event.api.internal.EventHandler;
  */
 public interface FlowContext {
 
+	public int getId();
+
 	public EventHandler getCurrentHandler();
 	
 	public Object getEndReason();
@@ -28,10 +30,13 @@ public interface FlowContext {
 		 * @param ctx
 		 * @return	reactors 0~N个反应器实例, 反应器可以为: 
 	     *  EventNameAware, 
+			EventCodeAware,
 			EventHandlerAware, 
 			EndReasonProvider,
 			EndReasonAware,
 			ExectionLoopAware,
+			ExectionLoopSwitcherAware,
+			EventSchedulerAware,
 			FlowLifecycleListener, 
 			FlowStateChangedListener
 		 */
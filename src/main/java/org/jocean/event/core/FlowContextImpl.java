@@ -3,17 +3,21 @@
  */
 package org.jocean.event.core;
 
-import java.util.Iterator;
-import java.util.Queue;
-import java.util.concurrent.ConcurrentLinkedQueue;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 import org.jocean.event.api.BizStep;
 import org.jocean.event.api.EndReasonAware;
+import org.jocean.event.api.EventReceiver;
 import org.jocean.event.api.EventUnhandleAware;
 import org.jocean.event.api.FlowLifecycleListener;
 import org.jocean.event.api.FlowStateChangedListener;
@@ -23,11 +27,11 @@ import org.jocean.event.api.internal.EventHandlerAware;
 import org.jocean.event.api.internal.EventNameAware;
 import org.jocean.event.api.internal.Eventable;
 import org.jocean.event.api.internal.ExectionLoopAware;
+import org.jocean.event.core.FlowMailbox.Envelope;
 import org.jocean.idiom.ArgsHandler;
+import org.jocean.idiom.Detachable;
 import org.jocean.idiom.ExceptionUtils;
 import org.jocean.idiom.ExectionLoop;
-import org.jocean.idiom.InterfaceUtils;
-import org.jocean.idiom.JOArrays;
 import org.jocean.idiom.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -45,6 +49,24 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
 		public void onActive(final FlowContextImpl ctx);
 		public void onUnactive(final FlowContextImpl ctx);
 	}
+	
+	/**
+	 * StatusReactor which may defer flow's first-time activation:
+	 *  deferred flow keep mailbox actived (its events are buffered), 
+	 *  and dispatch nothing until reactor invoke resumeActivation of the flow.
+	 */
+	public interface DeferrableStatusReactor extends StatusReactor {
+	    /**
+	     * @return true means flow's activation deferred
+	     */
+	    public boolean deferIfBusy(final FlowContextImpl ctx);
+	    
+	    /**
+	     * cancel deferred activation of flow destroyed, the flow will never be resumed
+	     * @return true means flow was deferred, and its actived mailbox is handed over to invoker
+	     */
+	    public boolean takeOverDeferred(final FlowContextImpl ctx);
+	}
     
     private static final Logger DEFAULT_LOG = 
     		LoggerFactory.getLogger(FlowContextImpl.class);
@@ -60,7 +82,24 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
 			final String		name,
 	        final ExectionLoop 	exectionLoop, 
 			final StatusReactor statusReactor) {
+		this(name, exectionLoop, statusReactor, 0);
+	}
+	
+	/**
+	 * @param mailboxRingSize 0 means unbounded linked mailbox, 
+	 * 	otherwise pending events stored in ring of preallocated & reusable envelopes,
+	 * 	and event will be rejected when ring is full
+	 */
+	public FlowContextImpl(
+			final String		name,
+	        final ExectionLoop 	exectionLoop, 
+			final StatusReactor statusReactor,
+			final int			mailboxRingSize) {
 		this._name = null != name ? name : super.toString();
+		this._id = _IDSRC.getAndIncrement();
+		this._mailbox = mailboxRingSize > 0 
+				? new RingFlowMailbox(mailboxRingSize)
+				: new LinkedFlowMailbox();
 		this._exectionLoop = exectionLoop;
         this._statusReactor = statusReactor;
         
@@ -76,29 +115,381 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
                 	DEFAULT_LOG;
     }
 
+	/**
+	 * generation of current use, changed when flow recycled & reused
+	 */
+	int generation() {
+	    return this._mailbox.generation();
+	}
+	
+	/**
+	 * release flow into pool after it's destroyed and its mailbox no longer owned,
+	 *  flow with timers or expiry is never pooled, 
+	 *  for their timeout may fire after reused.
+	 */
+	void setPool(final FlowContextPool pool) {
+	    this._pool = pool;
+	}
+	
+	//  invoked at end of doDestroy, and after each release of mailbox
+	private void checkRecycle() {
+	    if ( null != this._pool
+	        && RECYCLE_DESTROYED == this._recycleState
+	        && !this._mailbox.isActive()
+	        && RECYCLE_UPDATER.compareAndSet(this, RECYCLE_DESTROYED, RECYCLE_POOLED) ) {
+	        final FlowContextPool pool = this._pool;
+	        if (!clearBeforeRecycle()) {
+	            //  events of previous use MUST never be dispatched to next use
+	            logger.warn("flow({})'s mailbox is still owned or not empty, never pool it", this._name);
+	            return;
+	        }
+	        recycle();
+	        pool.release(this);
+	    }
+	}
+	
+	/**
+	 * @return true means mailbox is empty and no one own it
+	 */
+	private boolean clearBeforeRecycle() {
+	    if (!this._mailbox.tryAcquire()) {
+	        return false;
+	    }
+	    try {
+	        clearPendingEvents();
+	        return this._mailbox.isEmpty();
+	    }
+	    finally {
+	        this._mailbox.deactivate();
+	    }
+	}
+	
+	//  drop all references of previous use
 	@SuppressWarnings("unchecked")
+	private void recycle() {
+	    this._pool = null;
+	    this._exectionLoopAwares = ReactorShape.NO_EXECTIONLOOP_AWARE;
+	    this._eventNameAwares = ReactorShape.NO_EVENTNAME_AWARE;
+	    this._eventCodeAwares = ReactorShape.NO_EVENTCODE_AWARE;
+	    this._eventHandlerAwares = ReactorShape.NO_EVENTHANDLER_AWARE;
+	    this._flowLifecycleListeners = ReactorShape.NO_LIFECYCLE_LISTENER;
+	    this._flowStateChangedListeners = ReactorShape.NO_STATECHANGED_LISTENER;
+	    this._endReasonAwares = ReactorShape.NO_ENDREASON_AWARE;
+	    this._pendingExectionLoop = null;
+	    this._exectionLoopGroup = null;
+	    this._boundExectionLoop = null;
+	    this._limiter = null;
+	    this._priorityLimiter = null;
+	    this._metrics = null;
+	    this._recorder = null;
+	    this._currentHandler = null;
+	    this._reason = null;
+	    //  waiter of snapshot request MUST be waked, destroyed flow has no snapshot
+	    final SnapshotRequest request = SNAPSHOT_UPDATER.getAndSet(this, null);
+	    if (null != request) {
+	        request._done = true;
+	    }
+	    this._journal = null;
+	    this._journalLock = null;
+	    this._lastJournaled = null;
+	    this._receiver = null;
+	    this._conflatedEvents = null;
+	    this._pendingTransition = null;
+	    this._suspendedBy = null;
+	    this._suspendedEventable = null;
+	    this._suspendedArgs = null;
+	    this._bizKey = 0;
+	    this._hasBizKey = false;
+	}
+	
+	/**
+	 * init recycled flow for new use, with new id & generation
+	 */
+	void reuse(final String name, final ExectionLoop exectionLoop, final StatusReactor statusReactor) {
+	    if (null == exectionLoop) {
+	        throw new NullPointerException(
+	                "invalid params: exectionLoop is null");
+	    }
+	    this._name = null != name ? name : super.toString();
+	    this._exectionLoop = exectionLoop;
+	    this._statusReactor = statusReactor;
+	    this._id = _IDSRC.getAndIncrement();
+	    this._createTime = System.currentTimeMillis();
+	    this._lastModify = this._createTime;
+	    this._activeTime.set(0);
+	    this._lastActiveTime = 0;
+	    this._isFirsttimeActived = true;
+	    this._maxEventsPerDispatch = DEFAULT_MAX_EVENTS_PER_DISPATCH;
+	    this._maxNanosPerDispatch = 0;
+	    this._recycleState = RECYCLE_LIVE;
+	    //  stale EventReceiver is rejected since now
+	    this._mailbox.reopen();
+	}
+	
 	public void setReactors(final Object[] reactors) {
-        this._eventNameAware = InterfaceUtils.compositeIncludeType(EventNameAware.class, reactors);
-        this._eventHandlerAware = InterfaceUtils.compositeIncludeType(EventHandlerAware.class, reactors);
-        this._endReasonProvider = InterfaceUtils.compositeIncludeType(EndReasonProvider.class, reactors);
-        this._exectionLoopAware = InterfaceUtils.compositeIncludeType(ExectionLoopAware.class, reactors);
-        this._flowLifecycleListener = InterfaceUtils.compositeIncludeType(FlowLifecycleListener.class, reactors);
-        this._flowStateChangedListener = 
-        		InterfaceUtils.compositeIncludeType(FlowStateChangedListener.class, reactors);
+	    setReactors(reactors, ReactorShape.of(reactors));
+	}
+	
+	@SuppressWarnings("unchecked")
+	void setReactors(final Object[] reactors, final ReactorShape shape) {
+	    //  reactor (or handler) may outlive current use of recycled flow, 
+	    //  so closures below are bound to current use, like EventReceiver
+	    final int generation = generation();
+        this._eventNameAwares = shape.eventNameAwares(reactors);
+        this._eventCodeAwares = shape.eventCodeAwares(reactors);
+        this._eventHandlerAwares = shape.eventHandlerAwares(reactors);
+        this._flowLifecycleListeners = shape.flowLifecycleListeners(reactors);
+        this._flowStateChangedListeners = shape.flowStateChangedListeners(reactors);
+        
+        this._endReasonAwares = shape.endReasonAwares(reactors);
+        final EndReasonProvider[] endReasonProviders = shape.endReasonProviders(reactors);
+        if (endReasonProviders.length > 0) {
+            final EndReasonAware endReasonAware = new EndReasonAware(){
+                @Override
+                public void setEndReason(final Object endreason) {
+                    if (generation == generation()) {
+                        FlowContextImpl.this.setEndReason(endreason);
+                    }
+                }};
+            for (EndReasonProvider provider : endReasonProviders) {
+                provider.setEndReasonAware(endReasonAware);
+            }
+        }
         
-        if (null != this._endReasonProvider) {
-        	this._endReasonProvider.setEndReasonAware(
-    	        InterfaceUtils.compositeIncludeType(EndReasonAware.class, 
-                    JOArrays.addFirst(Object[].class, reactors, new EndReasonAware(){
-                        @Override
-                        public void setEndReason(final Object endreason) {
-                            _reason = endreason;
-                        }}) ) );
+        this._exectionLoopAwares = shape.exectionLoopAwares(reactors);
+        notifyExectionLoop();
+        
+        final ExectionLoopSwitcherAware[] switcherAwares = shape.exectionLoopSwitcherAwares(reactors);
+        if (switcherAwares.length > 0) {
+            final ExectionLoopSwitcher switcher = new ExectionLoopSwitcher() {
+                @Override
+                public boolean switchTo(final ExectionLoop exectionLoop) {
+                    return generation == generation() && switchExectionLoop(exectionLoop);
+                }};
+            for (ExectionLoopSwitcherAware aware : switcherAwares) {
+                try {
+                    aware.setExectionLoopSwitcher(switcher);
+                }
+                catch (Exception e) {
+                    logger.error("exception when invoke flow {}'s setExectionLoopSwitcher, detail: {}",
+                            this._name, ExceptionUtils.exception2detail(e));
+                }
+            }
         }
         
-        if (null!=this._exectionLoopAware) {
+        final EventSchedulerAware[] schedulerAwares = shape.eventSchedulerAwares(reactors);
+        if (schedulerAwares.length > 0) {
+            final EventScheduler scheduler = new EventScheduler() {
+                @Override
+                public Detachable scheduleEvent(final long delayMillis, final String event, 
+                        final Object... args) {
+                    return scheduleTimerEvent(generation, event, args, delayMillis, 0);
+                }
+                
+                @Override
+                public Detachable scheduleEvent(final long delayMillis, final Eventable eventable, 
+                        final Object... args) {
+                    return scheduleTimerEvent(generation, eventable, args, delayMillis, 0);
+                }
+                
+                @Override
+                public Detachable schedulePeriodicEvent(final long initialDelayMillis, final long periodMillis, 
+                        final String event, final Object... args) {
+                    return scheduleTimerEvent(generation, event, args, initialDelayMillis, periodMillis);
+                }
+                
+                @Override
+                public Detachable schedulePeriodicEvent(final long initialDelayMillis, final long periodMillis, 
+                        final Eventable eventable, final Object... args) {
+                    return scheduleTimerEvent(generation, eventable, args, initialDelayMillis, periodMillis);
+                }};
+            for (EventSchedulerAware aware : schedulerAwares) {
+                try {
+                    aware.setEventScheduler(scheduler);
+                }
+                catch (Exception e) {
+                    logger.error("exception when invoke flow {}'s setEventScheduler, detail: {}",
+                            this._name, ExceptionUtils.exception2detail(e));
+                }
+            }
+        }
+	}
+	
+	/**
+	 * @param generation generation of flow known by scheduler, 
+	 * 	timer of stale scheduler (flow recycled & reused) is rejected
+	 * @param periodMillis 0 means deliver once
+	 */
+	Detachable scheduleTimerEvent(final int generation, final Object eventable, final Object[] args, 
+			final long delayMillis, final long periodMillis) {
+		if (generation != generation()) {
+			notifyUnhandleEvent(eventable, args);
+			return STALE_TIMER;
+		}
+		TimerList timers = this._timers;
+		if (null == timers) {
+			TIMERS_UPDATER.compareAndSet(this, null, new TimerList());
+			timers = this._timers;
+		}
+		final TimerEvent timer = new TimerEvent(generation, eventable, null != args ? args : EMPTY_ARGS, periodMillis);
+		if (!timers.add(timer)) {
+			//	flow destroyed
+			notifyUnhandleEvent(eventable, args);
+			return timer;
+		}
+		timer.arm(System.currentTimeMillis() + Math.max(0, delayMillis));
+		//	destroy may not see timer added after it cancel all timers
+		if (isDestroyed() || generation != generation()) {
+			timer.detach();
+		}
+		return timer;
+	}
+	
+	/**
+	 * timers of flow, created when first timer scheduled, 
+	 * 	closed and all timers cancelled when flow destroyed
+	 */
+	private static final class TimerList {
+		
+		synchronized boolean add(final TimerEvent timer) {
+			if (this._closed) {
+				return false;
+			}
+			timer._next = this._head;
+			if (null != this._head) {
+				this._head._prev = timer;
+			}
+			this._head = timer;
+			return true;
+		}
+		
+		synchronized void remove(final TimerEvent timer) {
+			if (null != timer._prev) {
+				timer._prev._next = timer._next;
+			}
+			else if (this._head == timer) {
+				this._head = timer._next;
+			}
+			else {
+				//	not in list
+				return;
+			}
+			if (null != timer._next) {
+				timer._next._prev = timer._prev;
+			}
+			timer._prev = null;
+			timer._next = null;
+		}
+		
+		void cancelAll() {
+			TimerEvent timer;
+			synchronized (this) {
+				this._closed = true;
+				timer = this._head;
+				this._head = null;
+			}
+			while (null != timer) {
+				final TimerEvent next = timer._next;
+				timer._prev = null;
+				timer._next = null;
+				timer.cancel();
+				timer = next;
+			}
+		}
+		
+		private TimerEvent _head = null;
+		private boolean _closed = false;
+	}
+	
+	private final class TimerEvent implements Runnable, Detachable {
+		
+		TimerEvent(final int generation, final Object eventable, final Object[] args, final long periodMillis) {
+			this._generation = generation;
+			this._eventable = eventable;
+			this._args = args;
+			this._period = periodMillis;
+		}
+		
+		void arm(final long fireTime) {
+			this._fireTime = fireTime;
+			this._timeout = HashedTimingWheel.shared().newTimeout(this, 
+					fireTime - System.currentTimeMillis());
+		}
+		
+		//	invoked by ticker of timing wheel
+		@Override
+		public void run() {
+			if (this._cancelled) {
+				return;
+			}
+			if (this._period > 0) {
+				//	fixed rate
+				arm(this._fireTime + this._period);
+			}
+			else {
+				_timers.remove(this);
+			}
+			_exectionLoop.submit(this._deliver);
+		}
+		
+		@Override
+		public void detach() {
+			cancel();
+			final TimerList timers = _timers;
+			if (null != timers) {
+				timers.remove(this);
+			}
+		}
+		
+		void cancel() {
+			this._cancelled = true;
+			final HashedTimingWheel.Timeout timeout = this._timeout;
+			if (null != timeout) {
+				timeout.detach();
+			}
+		}
+		
+		private final Runnable _deliver = new Runnable() {
+			@Override
+			public void run() {
+				if (!_cancelled) {
+					deliverTimerEvent(_generation, _eventable, _args);
+				}
+			}};
+		
+		private final int _generation;
+		private final Object _eventable;
+		private final Object[] _args;
+		private final long _period;
+		private volatile long _fireTime;
+		private volatile HashedTimingWheel.Timeout _timeout = null;
+		private volatile boolean _cancelled = false;
+		
+		//	guarded by TimerList
+		private TimerEvent _prev;
+		private TimerEvent _next;
+	}
+	
+	//	invoked in flow's exectionLoop
+	private void deliverTimerEvent(final int generation, final Object eventable, final Object[] args) {
+		try {
+			//	timer event is not journaled: replayed flow will re-schedule its timers
+			processEvent(generation, eventable, args, false);
+		}
+		catch (Exception e) {
+			logger.error("exception when flow({}) deliver timer event:({}), detail:{}, try end flow", 
+					this._name, obj2event(eventable), ExceptionUtils.exception2detail(e));
+			if (generation == generation()) {
+				dumpFlightRecorder("exception when deliver timer event");
+				destroy(null, null);
+			}
+		}
+	}
+	
+	private void notifyExectionLoop() {
+        for (ExectionLoopAware aware : this._exectionLoopAwares) {
             try {
-            	this._exectionLoopAware.setExectionLoop(this._exectionLoop);
+            	aware.setExectionLoop(this._exectionLoop);
             }
             catch (Exception e) {
                 logger.error("exception when invoke flow {}'s setExectionLoop, detail: {}",
@@ -107,11 +498,145 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         }
 	}
 	
+	public ExectionLoop getExectionLoop() {
+	    return this._exectionLoop;
+	}
+	
+	ExectionLoopGroup getExectionLoopGroup() {
+	    return this._exectionLoopGroup;
+	}
+	
+	/**
+	 * @param group which the exectionLoop of flow belongs to, for tracing load of loops,
+	 *     current exectionLoop is bound to group
+	 */
+	void bindExectionLoopGroup(final ExectionLoopGroup group) {
+	    this._exectionLoopGroup = group;
+	    BOUND_LOOP_UPDATER.set(this, this._exectionLoop);
+	    group.bind(this._exectionLoop);
+	}
+	
+	/**
+	 * unbind loop bound by flow (if any) from group, invoked when flow destroyed or create failed,
+	 *     maybe concurrently with switching loop by the owner of mailbox
+	 */
+	void unbindExectionLoopGroup() {
+	    final ExectionLoopGroup group = this._exectionLoopGroup;
+	    final ExectionLoop bound = BOUND_LOOP_UPDATER.getAndSet(this, null);
+	    if (null != group && null != bound) {
+	        group.unbind(bound);
+	    }
+	}
+	
+	/**
+	 * move flow to another exectionLoop, if flow is dispatching, 
+	 *     the switch will be applied after current event dispatched
+	 * @return false if flow has been destroyed
+	 */
+	public boolean switchExectionLoop(final ExectionLoop exectionLoop) {
+	    if (null == exectionLoop) {
+	        throw new NullPointerException("invalid params: exectionLoop is null");
+	    }
+	    if (isDestroyed()) {
+	        return false;
+	    }
+	    PENDING_LOOP_UPDATER.set(this, exectionLoop);
+	    
+	    //  flow is idle, own mailbox to apply the switch at once
+	    if (this._mailbox.tryActivate()) {
+	        try {
+	            applyPendingExectionLoop();
+	        }
+	        finally {
+	            releaseMailbox();
+	        }
+	    }
+	    //  else: the owner of mailbox will apply the switch between dispatches
+	    return true;
+	}
+	
+	/**
+	 * give up mailbox owned outside drainPendingEvents (by tryActivate):
+	 *  destroy on other thread leave pending events to the owner, so clear them if destroyed,
+	 *  and re-schedule flow for event pushed when we own mailbox
+	 */
+	private void releaseMailbox() {
+	    if (isDestroyed()) {
+	        clearPendingEvents();
+	    }
+	    this._mailbox.deactivate();
+	    clearIfDestroyed();
+	    //  event pushed when we own mailbox can't schedule flow, so re-check here
+	    if (hasPendingEvent() && setActived()) {
+	        schedulePendingEvent(null);
+	    }
+	    checkRecycle();
+	}
+	
+	/**
+	 * invoked after give up mailbox: flow may be destroyed after owner's last check,
+	 *  and destroy can't clear pending events for mailbox still owned at that time
+	 */
+	private void clearIfDestroyed() {
+	    if (isDestroyed() && this._mailbox.tryAcquire()) {
+	        clearPendingEvents();
+	        this._mailbox.deactivate();
+	    }
+	}
+	
+	private boolean applyPendingExectionLoop() {
+	    final ExectionLoop target = PENDING_LOOP_UPDATER.getAndSet(this, null);
+	    if (null == target || target == this._exectionLoop) {
+	        return false;
+	    }
+	    final ExectionLoop current = this._exectionLoop;
+	    this._exectionLoop = target;
+	    final ExectionLoopGroup group = this._exectionLoopGroup;
+	    final ExectionLoop bound = this._boundExectionLoop;
+	    if (null != group && null != bound) {
+	        //  bind target first, and unbind what we replaced, 
+	        //  if unbound by destroy just now, undo the bind of target
+	        group.bind(target);
+	        group.unbind(BOUND_LOOP_UPDATER.compareAndSet(this, bound, target) ? bound : target);
+	    }
+	    if ( logger.isDebugEnabled() ) {
+	        logger.debug("flow({}) switch exectionLoop from {} to {}", this._name, current, target);
+	    }
+	    notifyExectionLoop();
+	    return true;
+	}
+	
     @Override
     public int compareTo(final FlowContextImpl o) {
         return this._id - o._id;
     }
 
+    @Override
+    public int getId() {
+        return this._id;
+    }
+    
+    EventReceiver getEventReceiver() {
+        return this._receiver;
+    }
+    
+    void setEventReceiver(final EventReceiver receiver) {
+        this._receiver = receiver;
+    }
+    
+    boolean hasBizKey() {
+        return this._hasBizKey;
+    }
+    
+    long getBizKey() {
+        return this._bizKey;
+    }
+    
+    void setBizKey(final long key) {
+        this._bizKey = key;
+        this._hasBizKey = true;
+    }
+
 	@Override
 	public EventHandler getCurrentHandler() {
 		return	this._currentHandler;
@@ -121,6 +646,91 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
 	public Object getEndReason() {
 		return _reason;
 	}
+	
+    private void setEndReason(final Object endreason) {
+        this._reason = endreason;
+        for (EndReasonAware aware : this._endReasonAwares) {
+            try {
+                aware.setEndReason(endreason);
+            }
+            catch (Exception e) {
+                logger.warn("exception when flow({}) setEndReason {}, detail: {}",
+                        this._name, endreason, ExceptionUtils.exception2detail(e));
+            }
+        }
+    }
+	
+	/**
+	 * destroy flow when it's idle (not actived and handler not changed) for idleTimeoutMillis,
+	 *  or alive for timeToLiveMillis, with end reason FlowExpiredReason.
+	 *  expiry is checked by timing wheel, re-armed lazily when fired before idle deadline,
+	 *  so push & dispatch event cost nothing for it.
+	 * @param idleTimeoutMillis 0 means no idle timeout
+	 * @param timeToLiveMillis	0 means no time to live
+	 */
+	void setExpiry(final HashedTimingWheel timingWheel, 
+			final long idleTimeoutMillis, final long timeToLiveMillis) {
+		this._timingWheel = timingWheel;
+		this._idleTimeout = idleTimeoutMillis;
+		this._timeToLive = timeToLiveMillis;
+		scheduleExpiry(System.currentTimeMillis());
+	}
+	
+	private void scheduleExpiry(final long now) {
+		long deadline = Long.MAX_VALUE;
+		if (this._idleTimeout > 0) {
+			deadline = Math.max(this._lastModify, this._lastActiveTime) + this._idleTimeout;
+		}
+		if (this._timeToLive > 0) {
+			deadline = Math.min(deadline, this._createTime + this._timeToLive);
+		}
+		if (Long.MAX_VALUE != deadline) {
+			this._expiryTimeout = this._timingWheel.newTimeout(this._checkExpiryRunnable, deadline - now);
+		}
+	}
+	
+	//	invoked by ticker of timing wheel
+	private void checkExpiry() {
+		if (isDestroyed()) {
+			return;
+		}
+		final long now = System.currentTimeMillis();
+		final FlowExpiredReason reason;
+		if (this._timeToLive > 0 && now - this._createTime >= this._timeToLive) {
+			reason = FlowExpiredReason.TIME_TO_LIVE_EXCEEDED;
+		}
+		else if (this._idleTimeout > 0 
+				&& now - Math.max(this._lastModify, this._lastActiveTime) >= this._idleTimeout) {
+			if (this._mailbox.isActive() && null == this._suspendedBy) {
+				//	busy flow is not idle, check again later
+				//	(flow suspended by pending transition is idle, and expired as well)
+				this._expiryTimeout = this._timingWheel.newTimeout(this._checkExpiryRunnable, this._idleTimeout);
+				return;
+			}
+			reason = FlowExpiredReason.IDLE_TIMEOUT;
+		}
+		else {
+			//	activity after last schedule, re-arm to new deadline
+			scheduleExpiry(now);
+			return;
+		}
+		this._exectionLoop.submit(new Runnable() {
+			@Override
+			public void run() {
+				expire(reason);
+			}});
+	}
+	
+	//	invoked in flow's exectionLoop
+	private void expire(final FlowExpiredReason reason) {
+		if (isDestroyed()) {
+			return;
+		}
+		logger.info("flow({}) expired by {}, destroy it", this._name, reason);
+		dumpFlightRecorder("expired by " + reason);
+		setEndReason(reason);
+		destroy(reason.name(), null);
+	}
 
     @Override
     public long getCreateTime() {
@@ -144,14 +754,349 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
 				: (System.currentTimeMillis() - this._createTime);
 	}
 	
+	/**
+	 * capture current handler, timing, end reason and pending events of flow,
+	 *  pending events MUST be walked by the owner of mailbox: 
+	 *  so when flow is idle, own mailbox and capture by self,
+	 *  else post request to the dispatching thread, which capture between two events.
+	 * @return null when flow has been destroyed, 
+	 *  or request not served after timeoutMillis (eg: flow's exectionLoop is stalled)
+	 */
+	FlowSnapshot captureSnapshot(final long timeoutMillis) {
+	    final long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+	    final SnapshotRequest request = new SnapshotRequest();
+	    while (!SNAPSHOT_UPDATER.compareAndSet(this, null, request)) {
+	        //  other snapshot in progress
+	        if (isDestroyed() || System.nanoTime() - deadline >= 0) {
+	            return null;
+	        }
+	        LockSupport.parkNanos(BLOCK_BACKOFF_NANOS);
+	    }
+	    for (;;) {
+	        if (request._done) {
+	            return request._snapshot;
+	        }
+	        if (this._mailbox.tryActivate()) {
+	            try {
+	                //  request may be served by dispatching thread just before it release mailbox
+	                return SNAPSHOT_UPDATER.compareAndSet(this, request, null) 
+	                        ? doCaptureSnapshot() 
+	                        : request._snapshot;
+	            }
+	            finally {
+	                //  clear pending events left by concurrent destroy, then re-schedule flow
+	                releaseMailbox();
+	            }
+	        }
+	        if (isDestroyed() || System.nanoTime() - deadline >= 0) {
+	            if (SNAPSHOT_UPDATER.compareAndSet(this, request, null)) {
+	                return null;
+	            }
+	            //  dispatching thread is capturing now, wait for it
+	            while (!request._done) {
+	                Thread.yield();
+	            }
+	            return request._snapshot;
+	        }
+	        LockSupport.parkNanos(BLOCK_BACKOFF_NANOS);
+	    }
+	}
+	
+	//  invoked by the dispatching thread between two events
+	private void serveSnapshotRequest() {
+	    final SnapshotRequest request = this._snapshotRequest;
+	    if (null != request && SNAPSHOT_UPDATER.compareAndSet(this, request, null)) {
+	        try {
+	            request._snapshot = doCaptureSnapshot();
+	        }
+	        finally {
+	            request._done = true;
+	        }
+	    }
+	}
+	
+	//  invoked by the owner of mailbox only
+	private FlowSnapshot doCaptureSnapshot() {
+	    if (isDestroyed()) {
+	        return null;
+	    }
+	    final List<String> events = new ArrayList<>();
+	    final List<Object[]> args = new ArrayList<>();
+	    this._mailbox.forEachExclusively(new FlowMailbox.Visitor() {
+	        @Override
+	        public void visit(final Envelope envelope) {
+	            if (envelope.eventable() instanceof ConflatedEvent) {
+	                final ConflatedEvent.Payload payload = ((ConflatedEvent)envelope.eventable()).peek();
+	                if (null != payload) {
+	                    events.add(obj2event(payload.eventable()));
+	                    args.add(payload.args());
+	                }
+	            }
+	            else {
+	                events.add(obj2event(envelope.eventable()));
+	                args.add(envelope.args());
+	            }
+	        }});
+	    final EventHandler handler = this._currentHandler;
+	    return new FlowSnapshot(this._name, 
+	            null != handler ? handler.getName() : null,
+	            this._createTime, 
+	            this._lastModify, 
+	            this._hasBizKey, 
+	            this._bizKey, 
+	            this._reason,
+	            events.toArray(new String[events.size()]),
+	            args.toArray(new Object[args.size()][]));
+	}
+	
+	private static final class SnapshotRequest {
+	    volatile FlowSnapshot _snapshot = null;
+	    volatile boolean _done = false;
+	}
+	
+	/**
+	 * restore timing & end reason of flow from snapshot, 
+	 *  invoked just after flow re-created and before any event pushed
+	 */
+	void restoreSnapshot(final FlowSnapshot snapshot) {
+	    this._createTime = snapshot.createTime();
+	    this._lastModify = snapshot.lastModify();
+	    if (null != snapshot.endReason()) {
+	        setEndReason(snapshot.endReason());
+	    }
+	    if (null != this._timingWheel) {
+	        //  re-arm expiry with restored timing
+	        final HashedTimingWheel.Timeout expiryTimeout = this._expiryTimeout;
+	        if (null != expiryTimeout) {
+	            expiryTimeout.detach();
+	        }
+	        scheduleExpiry(System.currentTimeMillis());
+	    }
+	}
+	
     // return true means event has been push to event-queue
     public boolean processEvent(final Object eventable, final Object[] args) throws Exception {
-        if (pushPendingEvent(eventable, args)) {
-            checkIfSchedulePendingEvent( obj2event(eventable));
-            return true;
-        } else {
+        return processEvent(generation(), eventable, args, true);
+    }
+    
+    /**
+     * @param generation generation of flow known by caller (eg: EventReceiver), 
+     *  event is rejected when flow has been recycled and reused
+     */
+    boolean processEvent(final int generation, final Object eventable, final Object[] args) throws Exception {
+        return processEvent(generation, eventable, args, true);
+    }
+    
+    private boolean processEvent(final int generation, final Object eventable, final Object[] args, 
+            final boolean journaled) throws Exception {
+        final int result = pushPendingEvent(generation, eventable, args, journaled);
+        if (FlowMailbox.OFFER_REJECTED == result) {
             return false;
         }
+        if (FlowMailbox.OFFER_ACTIVATED == result) {
+            onActived();
+            schedulePendingEvent(eventable);
+        }
+        else {
+            if ( logger.isTraceEnabled() ) {
+                logger.trace("flow {}'s currentHandler({}): already actived, can't schedulePendingEvent cause by event:({})", 
+                        this._name, this._currentHandler.getName(), obj2event(eventable));
+            }
+        }
+        return true;
+    }
+
+    /**
+     * push events in order, see BatchEventReceiver for atomicity of batch
+     * @return accept result of each event
+     */
+    public boolean[] processEvents(final Object[] eventables, final Object[][] argsList) throws Exception {
+        return processEvents(generation(), eventables, argsList);
+    }
+    
+    boolean[] processEvents(final int generation, final Object[] eventables, final Object[][] argsList) 
+            throws Exception {
+        int single = indexOfSingleEvent(eventables, 0);
+        if (single < 0) {
+            return processBatchedEvents(generation, eventables, argsList);
+        }
+        //  event which can't be enqueued with others (eg: priority or conflatable event) is pushed alone,
+        //  and events between them are pushed atomically in order
+        final int count = eventables.length;
+        final boolean[] accepted = new boolean[count];
+        int begin = 0;
+        while (begin < count) {
+            final int end = single < 0 ? count : single;
+            if (end > begin) {
+                final boolean[] ret = processBatchedEvents(generation, 
+                        Arrays.copyOfRange(eventables, begin, end), 
+                        argsRange(argsList, begin, end));
+                System.arraycopy(ret, 0, accepted, begin, ret.length);
+            }
+            if (single >= 0) {
+                accepted[single] = processEvent(generation, eventables[single], argsOf(argsList, single), true);
+                begin = single + 1;
+                single = indexOfSingleEvent(eventables, begin);
+            }
+            else {
+                begin = count;
+            }
+        }
+        return accepted;
+    }
+    
+    /**
+     * @return index of first event from begin which MUST be pushed alone, -1 if none
+     *  priority event is pushed to priority lane, 
+     *  and conflatable event is pushed to replace pending one (when not journaled)
+     */
+    private int indexOfSingleEvent(final Object[] eventables, final int begin) {
+        for (int idx = begin; idx < eventables.length; idx++) {
+            if (eventables[idx] instanceof PriorityEventable
+                || (null == this._journal && eventables[idx] instanceof ConflatableEventable)) {
+                return idx;
+            }
+        }
+        return -1;
+    }
+    
+    private static Object[][] argsRange(final Object[][] argsList, final int begin, final int end) {
+        final Object[][] range = new Object[end - begin][];
+        for (int idx = begin; idx < end; idx++) {
+            range[idx - begin] = argsOf(argsList, idx);
+        }
+        return range;
+    }
+    
+    private boolean[] processBatchedEvents(final int generation, final Object[] eventables, 
+            final Object[][] argsList) throws Exception {
+        final int count = eventables.length;
+        final boolean[] accepted = new boolean[count];
+        if (0 == count) {
+            return accepted;
+        }
+        
+        //  under BLOCK policy, enqueue permitted prefix of batch first and block only for the rest,
+        //  so flow can drain enqueued events while producer waiting for room
+        final boolean blocking = null != this._limiter && OverflowPolicy.BLOCK == this._limiter.policy();
+        int enqueued = 0;
+        while (enqueued < count && !isDestroyed() && generation == generation()) {
+            final int permitted = acquirePendingPermits(count - enqueued);
+            if (0 == permitted) {
+                break;
+            }
+            final int end = enqueued + permitted;
+            final int ret = enqueuePermittedEvents(generation, 
+                    (0 == enqueued && end == count) ? eventables : Arrays.copyOfRange(eventables, enqueued, end), 
+                    argsRange(argsList, enqueued, end));
+            enqueued += ret;
+            if (ret < permitted || !blocking) {
+                break;
+            }
+        }
+        
+        for (int idx = 0; idx < enqueued; idx++) {
+            accepted[idx] = true;
+        }
+        
+        if (enqueued < count) {
+            logger.warn("flow {} {}, ignore {} pending events from event:({})", 
+                    this._name, isDestroyed() || generation != generation() 
+                        ? "already destroy" : "'s mailbox is full or exceed capacity", 
+                    count - enqueued, obj2event(eventables[enqueued]));
+            for (int idx = enqueued; idx < count; idx++) {
+                notifyUnhandleEvent(eventables[idx], argsOf(argsList, idx));
+            }
+        }
+        return accepted;
+    }
+    
+    /**
+     * enqueue events which has taken pending permit atomically in order, and schedule flow at most once,
+     *  permits of events not enqueued are released.
+     * @return count of enqueued events (prefix of eventables)
+     */
+    private int enqueuePermittedEvents(final int generation, final Object[] eventables, 
+            final Object[][] argsList) throws Exception {
+        final int permitted = eventables.length;
+        int enqueued = 0;
+        boolean activated = false;
+        final EventJournal journal = this._journal;
+        EventJournal.Record lastJournaled = null;
+        
+        final Object[][] processedArgs = new Object[permitted][];
+        for (int idx = 0; idx < permitted; idx++) {
+            processedArgs[idx] = preprocessArgsByArgsHandler(eventables[idx], argsOf(argsList, idx));
+        }
+        final byte[][] encoded = null != journal ? new byte[permitted][] : null;
+        int enqueueable = permitted;
+        if (null != journal) {
+            for (int idx = 0; idx < permitted; idx++) {
+                try {
+                    encoded[idx] = journal.encodeEvent(obj2event(eventables[idx]), processedArgs[idx]);
+                }
+                catch (Exception e) {
+                    logger.warn("exception when flow({}) serialize args of event:({}), detail: {}", 
+                            this._name, obj2event(eventables[idx]), ExceptionUtils.exception2detail(e));
+                    enqueueable = idx;
+                    break;
+                }
+            }
+        }
+        if (enqueueable > 0 && this._mailbox.enter(generation)) {
+            if (null == journal) {
+                enqueued = this._mailbox.enqueueAll(eventables, processedArgs, enqueueable, enqueueNanos());
+            }
+            else {
+                //  journal & enqueue in same order
+                final EventJournal.Record[] records = new EventJournal.Record[enqueueable];
+                int appended = 0;
+                synchronized (this._journalLock) {
+                    while (appended < enqueueable 
+                        && null != (records[appended] = journal.appendEvent(this._journalKey, encoded[appended]))) {
+                        appended++;
+                    }
+                    enqueued = appended > 0 
+                            ? this._mailbox.enqueueAll(eventables, processedArgs, appended, enqueueNanos())
+                            : 0;
+                    if (enqueued > 0) {
+                        lastJournaled = records[enqueued - 1];
+                        this._lastJournaled = lastJournaled;
+                    }
+                }
+                for (int idx = enqueued; idx < appended; idx++) {
+                    journal.discard(this._journalKey, records[idx]);
+                }
+            }
+            if (enqueued > 0) {
+                activated = this._mailbox.leaveAndTryActivate();
+            }
+            else {
+                this._mailbox.leave();
+            }
+        }
+        
+        if (null != lastJournaled && journal.isWaitOnAccept() && !lastJournaled.awaitDurable()) {
+            logger.warn("flow({})'s {} events accepted but not durable, journal failed", 
+                    this._name, enqueued);
+        }
+        
+        for (int idx = enqueued; idx < permitted; idx++) {
+            postprocessArgsByArgsHandler(eventables[idx], processedArgs[idx]);
+            releasePendingPermit();
+        }
+        
+        if (activated) {
+            onActived();
+            schedulePendingEvent(eventables[0]);
+        }
+        return enqueued;
+    }
+    
+    private static Object[] argsOf(final Object[][] argsList, final int idx) {
+        return (null != argsList && idx < argsList.length && null != argsList[idx]) 
+                ? argsList[idx] 
+                : EMPTY_ARGS;
     }
     	
 	public FlowContextImpl setCurrentHandler(
@@ -161,9 +1106,10 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         if (((this._currentHandler == null) && (handler != null))
                 || ((this._currentHandler != null) && !this._currentHandler
                         .equals(handler))) {
-            if (null!=this._flowStateChangedListener) {
+            final FlowStateChangedListener<EventHandler>[] listeners = this._flowStateChangedListeners;
+            for (int idx = 0; idx < listeners.length; idx++) {
             	try {
-            		_flowStateChangedListener.onStateChanged(
+            		listeners[idx].onStateChanged(
             				this._currentHandler, handler, causeEvent, causeArgs);
 				} catch (Exception e) {
                     logger.warn("exception when _flow.onStateChanged for flow({}) with next handler({}), event:({}), detail:{}",
@@ -174,9 +1120,10 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
             this._currentHandler = handler;
             this._lastModify = System.currentTimeMillis();
             
-            if (null!=this._eventHandlerAware) {
+            final EventHandlerAware[] awares = this._eventHandlerAwares;
+            for (int idx = 0; idx < awares.length; idx++) {
                 try {
-                    ((EventHandlerAware)this._eventHandlerAware).setEventHandler(handler);
+                    awares[idx].setEventHandler(handler);
                 }
                 catch (Exception e) {
                     logger.error("exception when setEventHandler: handler {} to flow {}, detail: {}",
@@ -188,91 +1135,478 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
     }
 	
     public void destroy(final String causeEvent, final Object[] causeArgs) {
-        this._destroyingLock.writeLock().lock();
+        //  close wait for all in-flight pushPendingEvent, 
+        //  so every event accepted before close will be clear by clearPendingEvents
+        if (this._mailbox.close()) {
+            doDestroy(causeEvent, causeArgs);
+        }
+    }
+
+    private void doDestroy(final String causeEvent, final Object[] causeArgs) {
+        if ( logger.isTraceEnabled() ) {
+            logger.trace("flow({}) destroy with currentHandler({})", this._name, 
+                    ( null == this._currentHandler ? "null" : this._currentHandler.getName()));
+        }
+        
+        this._lastModify = System.currentTimeMillis();
+        
+        final HashedTimingWheel.Timeout expiryTimeout = this._expiryTimeout;
+        if (null != expiryTimeout) {
+            expiryTimeout.detach();
+        }
+        final TimerList timers = this._timers;
+        if (null != timers) {
+            timers.cancelAll();
+        }
+        
+        if (Thread.currentThread() == this._drainingThread) {
+            //  destroy during dispatch, dispatchPendingEvent will setUnactive when return
+            clearPendingEvents();
+        }
+        else if (this._mailbox.tryAcquire()) {
+            //  no one own the mailbox, clear pending events by self
+            clearPendingEvents();
+            this._mailbox.deactivate();
+        }
+        else if (takeOverSuspended()) {
+            //  flow suspended by pending transition will never resume, 
+            //  so take over the mailbox and clear pending events by self
+            abandonPendingTransition();
+            clearPendingEvents();
+            setUnactive();
+        }
+        else if (takeOverDeferred()) {
+            //  flow deferred by admission control should not wait for resume, 
+            //  so take over the mailbox and clear pending events by self
+            clearPendingEvents();
+            setUnactive();
+        }
+        //  else: the owner of mailbox (scheduled dispatchPendingEvent) 
+        //      will clear pending events when it found flow destroyed
+        
+        for (FlowStateChangedListener<EventHandler> listener : this._flowStateChangedListeners) {
+        	try {
+        		listener.onStateChanged(
+        				this._currentHandler, null, causeEvent, causeArgs);
+			} catch (Exception e) {
+                logger.warn("exception when _flow.onStateChanged for flow({}) when doDestroy, event:({}), detail:{}",
+                        this._name, causeEvent, ExceptionUtils.exception2detail(e));
+			}
+        }
+        
+        for (FlowLifecycleListener listener : this._flowLifecycleListeners) {
+            try {
+            	listener.afterFlowDestroy();
+            }
+            catch (Exception e) {
+                logger.error("exception when invoke flow {}'s afterFlowDestroy, detail: {}",
+                        this._name, ExceptionUtils.exception2detail(e));
+            }
+        }
+        
+        if ( null != this._pool && null == this._timers && null == this._timingWheel ) {
+            this._recycleState = RECYCLE_DESTROYED;
+            checkRecycle();
+        }
+    }
+
+	public boolean isDestroyed() {
+        return this._mailbox.isClosed();
+	}
+
+    private void clearPendingEvents() {
+        Envelope envelope;
+        while (null != (envelope = pollPendingEvent())) {
+            notifyUnhandleEvent(envelope.eventable(), envelope.args());
+            postprocessArgsByArgsHandler(envelope.eventable(), envelope.args());
+            this._mailbox.release(envelope);
+        }
+    }
+
+    private int pushPendingEvent(final int generation, final Object eventable, final Object[] args, 
+            final boolean journaled) throws Exception {
+        if (!isDestroyed() && generation == generation()) {
+            if (eventable instanceof ConflatableEventable 
+                && (!journaled || null == this._journal)) {
+                return pushConflatableEvent(generation, (ConflatableEventable)eventable, args);
+            }
+            //  control event never wait for or be rejected by capacity of data events, 
+            //  but by its own priority capacity
+            final boolean priority = eventable instanceof PriorityEventable;
+            if (priority ? !acquirePriorityPermit() : !acquirePendingPermit()) {
+                logger.warn("flow {}'s pending {}events exceed capacity, reject pending event:({})", 
+                        this._name, priority ? "priority " : "", obj2event(eventable));
+                notifyUnhandleEvent(eventable, args);
+                return FlowMailbox.OFFER_REJECTED;
+            }
+            final Object[] processedArgs = preprocessArgsByArgsHandler(eventable, args);
+            final EventJournal journal = journaled ? this._journal : null;
+            final int result = null == journal 
+                    ? this._mailbox.offer(eventable, processedArgs, enqueueNanos(), generation)
+                    : offerJournaled(generation, journal, eventable, processedArgs);
+            if (FlowMailbox.OFFER_ENQUEUED == result 
+                || FlowMailbox.OFFER_ACTIVATED == result) {
+                return result;
+            }
+            if (priority) {
+                releasePriorityPermit();
+            }
+            else {
+                releasePendingPermit();
+            }
+            postprocessArgsByArgsHandler(eventable, processedArgs);
+            if (FlowMailbox.OFFER_FULL == result) {
+                logger.warn("flow {}'s mailbox is full, ignore pending event:({})", 
+                        this._name, obj2event(eventable));
+                notifyUnhandleEvent(eventable, args);
+                return FlowMailbox.OFFER_REJECTED;
+            }
+            if (OFFER_UNJOURNALED == result) {
+                logger.warn("flow {} can't journal pending event:({}), ignore it", 
+                        this._name, obj2event(eventable));
+                notifyUnhandleEvent(eventable, args);
+                return FlowMailbox.OFFER_REJECTED;
+            }
+            //  destroyed after preprocess
+        }
+        logger.warn("flow {} already destroy, ignore pending event:({})", 
+        		this._name, obj2event(eventable));
+        notifyUnhandleEvent(eventable, args);
+        return FlowMailbox.OFFER_REJECTED;
+    }
+
+    /**
+     * replace args of pending event with same conflation key, or pend new ConflatedEvent
+     */
+    private int pushConflatableEvent(final int generation, final ConflatableEventable eventable, 
+            final Object[] args) throws Exception {
+        final Object key = null != eventable.conflationKey() 
+                ? eventable.conflationKey() 
+                : eventable.event();
+        final Object[] processedArgs = preprocessArgsByArgsHandler(eventable, args);
+        final ConcurrentMap<Object, ConflatedEvent> conflatedEvents = conflatedEvents();
+        for (;;) {
+            final ConflatedEvent exist = conflatedEvents.get(key);
+            if (null != exist) {
+                if (exist.generation() != generation) {
+                    //  pended by recycled flow, stale producer never replace its payload
+                    logger.warn("flow {} already destroy, ignore conflatable event:({})", 
+                            this._name, obj2event(eventable));
+                    notifyUnhandleEvent(eventable, args);
+                    postprocessArgsByArgsHandler(eventable, processedArgs);
+                    return FlowMailbox.OFFER_REJECTED;
+                }
+                final ConflatedEvent.Payload replaced = exist.replace(eventable, processedArgs);
+                if (null != replaced) {
+                    if ( logger.isTraceEnabled() ) {
+                        logger.trace("flow {}'s pending event:({}) replaced by conflatable event:({})", 
+                                this._name, obj2event(replaced.eventable()), obj2event(eventable));
+                    }
+                    postprocessArgsByArgsHandler(replaced.eventable(), replaced.args());
+                    return FlowMailbox.OFFER_ENQUEUED;
+                }
+                //  taken by consumer just now
+                conflatedEvents.remove(key, exist);
+                continue;
+            }
+            final ConflatedEvent pending = new ConflatedEvent(key, generation, eventable, processedArgs);
+            if (null != conflatedEvents.putIfAbsent(key, pending)) {
+                continue;
+            }
+            int result = FlowMailbox.OFFER_REJECTED;
+            if (pending.isPriority() ? acquirePriorityPermit() : acquirePendingPermit()) {
+                result = this._mailbox.offer(pending, null, enqueueNanos(), generation, 
+                        pending.isPriority());
+                if (FlowMailbox.OFFER_ENQUEUED == result 
+                    || FlowMailbox.OFFER_ACTIVATED == result) {
+                    return result;
+                }
+                if (pending.isPriority()) {
+                    releasePriorityPermit();
+                }
+                else {
+                    releasePendingPermit();
+                }
+            }
+            conflatedEvents.remove(key, pending);
+            //  payload may be replaced by other producer before offer failed
+            final ConflatedEvent.Payload payload = pending.take();
+            if (null != payload) {
+                logger.warn("flow {} can't pend conflatable event:({}), ignore it", 
+                        this._name, obj2event(payload.eventable()));
+                notifyUnhandleEvent(payload.eventable(), payload.args());
+                postprocessArgsByArgsHandler(payload.eventable(), payload.args());
+            }
+            return FlowMailbox.OFFER_REJECTED;
+        }
+    }
+    
+    private ConcurrentMap<Object, ConflatedEvent> conflatedEvents() {
+        final ConcurrentMap<Object, ConflatedEvent> conflatedEvents = this._conflatedEvents;
+        if (null != conflatedEvents) {
+            return conflatedEvents;
+        }
+        CONFLATED_UPDATER.compareAndSet(this, null, new ConcurrentHashMap<Object, ConflatedEvent>());
+        return this._conflatedEvents;
+    }
+    
+    /**
+     * fill envelope with latest payload of ConflatedEvent, 
+     *  invoked by whom polled envelope
+     * payload of enqueued ConflatedEvent is only taken by whom polled it 
+     *  (producer take payload only when offer failed, that is never enqueued),
+     *  so payload taken already should never happen, if so, release the envelope 
+     * @return false means envelope has been released and should be skipped
+     */
+    private boolean unwrapConflated(final Envelope envelope) {
+        if (envelope.eventable() instanceof ConflatedEvent) {
+            final ConflatedEvent pending = (ConflatedEvent)envelope.eventable();
+            //  remove first, so event conflated after take is pended as new one
+            this._conflatedEvents.remove(pending.key(), pending);
+            final ConflatedEvent.Payload payload = pending.take();
+            if (null == payload) {
+                logger.error("flow {}'s pending conflated event:({}) has been taken, skip it", 
+                        this._name, pending.key());
+                this._mailbox.release(envelope);
+                return false;
+            }
+            envelope.fill(payload.eventable(), payload.args(), envelope.enqueueNanos());
+        }
+        return true;
+    }
+
+    /**
+     * append event to journal and offer it to mailbox in same order, 
+     *  then wait for it durable if journal's waitOnAccept.
+     *  event offered is dispatched only after it's durable (see awaitJournaled).
+     */
+    private int offerJournaled(final int generation, final EventJournal journal, 
+            final Object eventable, final Object[] args) {
+        final byte[] encoded;
         try {
-            if (this._isAlive.compareAndSet(true, false)) {
-                doDestroy(causeEvent, causeArgs);
+            encoded = journal.encodeEvent(obj2event(eventable), args);
+        }
+        catch (Exception e) {
+            logger.warn("exception when flow({}) serialize args of event:({}), detail: {}", 
+                    this._name, obj2event(eventable), ExceptionUtils.exception2detail(e));
+            return OFFER_UNJOURNALED;
+        }
+        final EventJournal.Record record;
+        final int result;
+        synchronized (this._journalLock) {
+            record = journal.appendEvent(this._journalKey, encoded);
+            if (null == record) {
+                return OFFER_UNJOURNALED;
+            }
+            result = this._mailbox.offer(eventable, args, enqueueNanos(), generation);
+            if (FlowMailbox.OFFER_ENQUEUED == result 
+                || FlowMailbox.OFFER_ACTIVATED == result) {
+                this._lastJournaled = record;
+            }
+        }
+        if (FlowMailbox.OFFER_ENQUEUED == result 
+            || FlowMailbox.OFFER_ACTIVATED == result) {
+            if (journal.isWaitOnAccept() && !record.awaitDurable()) {
+                logger.warn("flow({})'s event:({}) accepted but not durable, journal failed", 
+                        this._name, obj2event(eventable));
+            }
+        }
+        else {
+            journal.discard(this._journalKey, record);
+        }
+        return result;
+    }
+    
+    /**
+     * wait for all events offered by now durable, 
+     *  invoked by the owner of mailbox before dispatch event
+     */
+    private void awaitJournaled() {
+        final EventJournal.Record record = this._lastJournaled;
+        if (null != record && !record.awaitDurable()) {
+            logger.warn("flow({})'s pending event not durable, journal failed, dispatch it anyway", 
+                    this._name);
+        }
+    }
+    
+    /**
+     * journal creation of flow, and events accepted by flow's EventReceiver since now
+     */
+    void setJournal(final EventJournal journal, final String initHandlerName) {
+        this._journalKey = journal.flowKeyOf(this._id);
+        this._journalLock = new Object();
+        journal.flowCreated(this._journalKey, this._name, initHandlerName);
+        this._journal = journal;
+    }
+    
+    void journalEnded() {
+        final EventJournal journal = this._journal;
+        if (null != journal) {
+            journal.flowEnded(this._journalKey);
+        }
+    }
+    
+    /**
+     * @return true means permit acquired (or flow has no limiter), event can be enqueued
+     */
+    /**
+     * @return count of permits taken for at most count events, 
+     *  block (if BLOCK policy) only when no permit available for first event
+     */
+    private int acquirePendingPermits(final int count) {
+        if (null == this._limiter) {
+            return count;
+        }
+        int permitted = 0;
+        while (permitted < count 
+            && (0 == permitted ? acquirePendingPermit() : tryAcquirePendingPermit())) {
+            permitted++;
+        }
+        return permitted;
+    }
+    
+    private boolean tryAcquirePendingPermit() {
+        final PendingLimiter limiter = this._limiter;
+        if (null == limiter || limiter.tryAcquire()) {
+            return true;
+        }
+        //  permit of dropped event is taken over by new event
+        return OverflowPolicy.DROP_OLDEST == limiter.policy() && dropOldestPendingEvent();
+    }
+    
+    private boolean acquirePendingPermit() {
+        final PendingLimiter limiter = this._limiter;
+        if (tryAcquirePendingPermit()) {
+            return true;
+        }
+        switch (limiter.policy()) {
+        case BLOCK:
+            if (Thread.currentThread() == this._drainingThread 
+                || this._exectionLoop.inExectionLoop()) {
+                //  wait in the thread which should drain mailbox will never get room
+                return false;
             }
-        } finally {
-            this._destroyingLock.writeLock().unlock();
+            final long deadline = System.nanoTime() + limiter.blockTimeoutNanos();
+            do {
+                LockSupport.parkNanos(BLOCK_BACKOFF_NANOS);
+                if (limiter.tryAcquire()) {
+                    return true;
+                }
+            } while (!isDestroyed() && (System.nanoTime() - deadline) < 0);
+            return false;
+        default:
+            return false;
         }
     }
-
-    private void doDestroy(final String causeEvent, final Object[] causeArgs) {
-        if ( logger.isTraceEnabled() ) {
-            logger.trace("flow({}) destroy with currentHandler({})", this._name, 
-                    ( null == this._currentHandler ? "null" : this._currentHandler.getName()));
-        }
-        
-        this._lastModify = System.currentTimeMillis();
-        
-        setUnactive();
-        
-        //  clear pending event and args
-        while (!this._pendingEvents.isEmpty()) {
-            final Iterator<Pair<Object,Object[]>> iter = this._pendingEvents.iterator();
-            final Pair<Object, Object[]> eventAndArgs = iter.next();
-            notifyUnhandleEvent(eventAndArgs.getFirst(), eventAndArgs.getSecond());
-            postprocessArgsByArgsHandler(eventAndArgs.getFirst(), eventAndArgs.getSecond());
-            iter.remove();
+    
+    private void releasePendingPermit() {
+        if (null != this._limiter) {
+            this._limiter.release();
         }
-        
-        if (null!=this._flowStateChangedListener) {
-        	try {
-        		_flowStateChangedListener.onStateChanged(
-        				this._currentHandler, null, causeEvent, causeArgs);
-			} catch (Exception e) {
-                logger.warn("exception when _flow.onStateChanged for flow({}) when doDestroy, event:({}), detail:{}",
-                        this._name, causeEvent, ExceptionUtils.exception2detail(e));
-			}
+    }
+    
+    private boolean acquirePriorityPermit() {
+        final PendingLimiter limiter = this._priorityLimiter;
+        return null == limiter || limiter.tryAcquire();
+    }
+    
+    private void releasePriorityPermit() {
+        final PendingLimiter limiter = this._priorityLimiter;
+        if (null != limiter) {
+            limiter.release();
         }
-        
-        if (null!=this._flowLifecycleListener) {
-            try {
-            	this._flowLifecycleListener.afterFlowDestroy();
+    }
+    
+    private boolean dropOldestPendingEvent() {
+        Envelope envelope;
+        do {
+            envelope = this._mailbox.pollNormalExclusively();
+            if (null == envelope) {
+                return false;
             }
-            catch (Exception e) {
-                logger.error("exception when invoke flow {}'s afterFlowDestroy, detail: {}",
-                        this._name, ExceptionUtils.exception2detail(e));
+        } while (!unwrapConflated(envelope));
+        logger.warn("flow {}'s pending events exceed capacity, drop oldest pending event:({})", 
+                this._name, obj2event(envelope.eventable()));
+        notifyUnhandleEvent(envelope.eventable(), envelope.args());
+        postprocessArgsByArgsHandler(envelope.eventable(), envelope.args());
+        this._mailbox.release(envelope);
+        return true;
+    }
+    
+    //  invoked by the owner of mailbox only
+    private Envelope pollPendingEvent() {
+        for (;;) {
+            final Envelope envelope = pollEnvelope();
+            if (null == envelope || unwrapConflated(envelope)) {
+                return envelope;
             }
         }
     }
-
-	public boolean isDestroyed() {
-        return !this._isAlive.get();
-	}
-
-    private Pair<Object, Object[]> popPendingEvent() {
-        this._destroyingLock.readLock().lock();
-        try {
-            if (isDestroyed()) {
-                return null;
+    
+    private Envelope pollEnvelope() {
+        final PendingLimiter limiter = this._limiter;
+        final Envelope envelope = null != limiter && OverflowPolicy.DROP_OLDEST == limiter.policy()
+                ? this._mailbox.pollExclusively()
+                : this._mailbox.poll();
+        if (null != envelope) {
+            if (isPriority(envelope.eventable())) {
+                //  priority event take permit of priority limiter only
+                releasePriorityPermit();
+            }
+            else if (null != limiter) {
+                limiter.release();
             }
-            return this._pendingEvents.poll();
-        } finally {
-            this._destroyingLock.readLock().unlock();
         }
+        return envelope;
+    }
+    
+    private static boolean isPriority(final Object eventable) {
+        return eventable instanceof ConflatedEvent 
+                ? ((ConflatedEvent)eventable).isPriority() 
+                : eventable instanceof PriorityEventable;
+    }
+    
+    /**
+     * @return count of pending events not yet dispatched, 
+     *  -1 means not tracked (flow without capacity and watermark)
+     */
+    public int getPendingEventCount() {
+        return null != this._limiter ? this._limiter.pendingCount() : -1;
+    }
+    
+    public boolean isAboveHighWatermark() {
+        return null != this._limiter && this._limiter.isAboveHighWatermark();
+    }
+    
+    /**
+     * MUST be set before any event pushed to flow
+     */
+    void setPendingLimiter(final PendingLimiter limiter) {
+        this._limiter = limiter;
+    }
+    
+    /**
+     * limit pending priority events, MUST be set before any event pushed to flow
+     */
+    void setPriorityLimiter(final PendingLimiter limiter) {
+        this._priorityLimiter = limiter;
     }
 
-    private boolean pushPendingEvent(final Object eventable, final Object[] args) throws Exception {
-        this._destroyingLock.readLock().lock();
-        if (!isDestroyed()) {
-            try {
-                this._pendingEvents.add(Pair.of(eventable, preprocessArgsByArgsHandler(eventable, args)));
-            } finally {
-                this._destroyingLock.readLock().unlock();
-            }
-            return true;
-        } else {
-            this._destroyingLock.readLock().unlock();
-            logger.warn("flow {} already destroy, ignore pending event:({})", 
-            		this._name, obj2event(eventable));
-            notifyUnhandleEvent(eventable, args);
-            return false;
-        }
+    private long enqueueNanos() {
+        return null != this._metrics ? System.nanoTime() : 0;
+    }
+    
+    /**
+     * MUST be set before any event pushed to flow, null means metrics disabled
+     */
+    void setMetrics(final FlowMetrics metrics) {
+        this._metrics = metrics;
     }
 
     private void notifyUnhandleEvent(final Object eventable, final Object[] args) {
+        if ( null != this._metrics ) {
+            this._metrics.recordUnhandled();
+        }
         if ( eventable instanceof EventUnhandleAware ) {
             try {
                 if ( logger.isTraceEnabled() ) {
@@ -288,66 +1622,280 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         }
     }
 
+    //  invoked by the owner of mailbox only
     private boolean hasPendingEvent() {
-        this._destroyingLock.readLock().lock();
-        try {
-            if (isDestroyed()) {
-                return false;
-            }
-            return !this._pendingEvents.isEmpty();
-        } finally {
-            this._destroyingLock.readLock().unlock();
+        if (isDestroyed()) {
+            return false;
         }
+        final PendingLimiter limiter = this._limiter;
+        return null != limiter && OverflowPolicy.DROP_OLDEST == limiter.policy()
+                ? !this._mailbox.isEmptyExclusively()
+                : !this._mailbox.isEmpty();
+    }
+
+    boolean isFirsttimeActived() {
+        return this._isFirsttimeActived;
+    }
+
+    /**
+     * resume dispatch of flow deferred by DeferrableStatusReactor, 
+     *  MUST be invoked once and only for deferred flow
+     */
+    public void resumeActivation() {
+        this._exectionLoop.submit( this._dispatchPendingRunnable );
     }
 
     private void dispatchPendingEvent() {
+        this._drainingThread = Thread.currentThread();
+        try {
+            drainPendingEvents();
+        }
+        finally {
+            this._drainingThread = null;
+        }
+        checkRecycle();
+    }
+
+    private void drainPendingEvents() {
         if ( this._isFirsttimeActived ) {
             this._isFirsttimeActived = false;
             if ( null != this._statusReactor ) {
                 if ( this._statusReactor.checkIfExceedLimit(this) ) {
                     this._statusReactor.onDestroyByExceedLimit(this);
                     this.destroy(null, null);
+                    setUnactive();
+                    return;
+                }
+                if ( this._statusReactor instanceof DeferrableStatusReactor
+                    && ((DeferrableStatusReactor)this._statusReactor).deferIfBusy(this) ) {
+                    //  keep mailbox actived, dispatch continue when resumeActivation
+                    if ( isDestroyed() && takeOverDeferred() ) {
+                        //  destroyed before deferred, destroyer may miss it, clear by self
+                        clearPendingEvents();
+                        setUnactive();
+                    }
                     return;
                 }
             }
         }
 
-        final Pair<Object, Object[]> eventAndArgs = popPendingEvent();
+        //  drain pending events iteratively, and yield the flow back to its
+        //  exectionLoop when this activation's budget has been used up
+        final int maxEvents = this._maxEventsPerDispatch;
+        final long maxNanos = this._maxNanosPerDispatch;
+        final long beginNanos = maxNanos > 0 ? System.nanoTime() : 0;
+        int dispatched = 0;
         
-        if (null != eventAndArgs) {
-            final String event = obj2event(eventAndArgs.getFirst());
-            try {
-                if ( logger.isTraceEnabled() ) {
-                    logger.trace("flow({}) with currentHandler({}) before dispatch event:({})", 
-                            this._name, this._currentHandler.getName(), event);
+        for (;;) {
+            if (isDestroyed()) {
+                abandonPendingTransition();
+                clearPendingEvents();
+                setUnactive();
+                return;
+            }
+            
+            if (null != this._pendingTransition && suspendByPendingTransition()) {
+                //  keep mailbox actived, dispatch continue when transition completed
+                return;
+            }
+            
+            if (null != this._snapshotRequest) {
+                serveSnapshotRequest();
+            }
+            
+            if (null != this._pendingExectionLoop && applyPendingExectionLoop()) {
+                //  keep mailbox actived, and continue dispatch in new exectionLoop
+                this._exectionLoop.submit( this._dispatchPendingRunnable );
+                return;
+            }
+            
+            final Envelope envelope = pollPendingEvent();
+            
+            if (null == envelope) {
+                setUnactive();
+                //  event may be pushed after poll return null and before setUnactive,
+                //  its producer found flow still actived, so re-check here
+                if (hasPendingEvent() && setActived()) {
+                    continue;
                 }
-                
-                if ( !this.dispatchEvent(
-                        event,
-                        eventAndArgs.getSecond()) ) {
-                    // event !NOT! handle by current EventHandler
+                return;
+            }
+            
+            if (null != this._journal) {
+                awaitJournaled();
+            }
+            dispatchPendingEvent(envelope);
+            dispatched++;
+            
+            if ( (maxEvents > 0 && dispatched >= maxEvents)
+                || (maxNanos > 0 && (System.nanoTime() - beginNanos) >= maxNanos) ) {
+                if (hasPendingEvent()) {
                     if ( logger.isTraceEnabled() ) {
-                        logger.trace("flow({}) with currentHandler({}) !NOT! handle event:({})", 
-                                this._name, this._currentHandler.getName(), event);
+                        logger.trace("flow({}) dispatched {} events in this activation, yield to exectionLoop", 
+                                this._name, dispatched);
                     }
-                    notifyUnhandleEvent(eventAndArgs.getFirst(), eventAndArgs.getSecond());
+                    //  keep mailbox actived, so no other thread can schedule this flow
+                    this._exectionLoop.submit( this._dispatchPendingRunnable );
+                    return;
                 }
-                
+            }
+        }
+    }
+
+    private void dispatchPendingEvent(final Envelope envelope) {
+        //  take payload and release envelope before dispatch, so handler blocked or suspended 
+        //  never hold slot of ring mailbox, and pending events can still wrap (eg: drop oldest)
+        final Object eventable = envelope.eventable();
+        final Object[] args = envelope.args();
+        final long enqueueNanos = envelope.enqueueNanos();
+        this._mailbox.release(envelope);
+        
+        final String event = obj2event(eventable);
+        final int code = eventable instanceof CodedEventable 
+                ? ((CodedEventable)eventable).code() 
+                : EventCodeRegistry.UNKNOWN_CODE;
+        if ( null != this._metrics && 0 != enqueueNanos ) {
+            this._metrics.recordQueueWait(System.nanoTime() - enqueueNanos);
+        }
+        try {
+            if ( logger.isTraceEnabled() ) {
+                logger.trace("flow({}) with currentHandler({}) before dispatch event:({})", 
+                        this._name, this._currentHandler.getName(), event);
+            }
+            
+            if ( !this.dispatchEvent(
+                    event,
+                    code,
+                    args) ) {
+                // event !NOT! handle by current EventHandler
                 if ( logger.isTraceEnabled() ) {
-                    logger.trace("flow({}) with currentHandler({}) after dispatch event:({}) and _isActived({})", 
-                            this._name, this._currentHandler.getName(), 
-                            event, this._isActived.get());
+                    logger.trace("flow({}) with currentHandler({}) !NOT! handle event:({})", 
+                            this._name, this._currentHandler.getName(), event);
                 }
-            } catch (Throwable e) {
-                logger.warn("exception when flow({}) process event:({}), detail:{}",
-                        this._name, event,
-                        ExceptionUtils.exception2detail(e));
+                notifyUnhandleEvent(eventable, args);
             }
-            finally {
-                postprocessArgsByArgsHandler(eventAndArgs.getFirst(), eventAndArgs.getSecond());
+            
+            if ( logger.isTraceEnabled() ) {
+                logger.trace("flow({}) with currentHandler({}) after dispatch event:({}) and _isActived({})", 
+                        this._name, this._currentHandler.getName(), 
+                        event, this._mailbox.isActive());
             }
-        } else {
-            setUnactive();
+        } catch (Throwable e) {
+            logger.warn("exception when flow({}) process event:({}), detail:{}",
+                    this._name, event,
+                    ExceptionUtils.exception2detail(e));
+        }
+        finally {
+            if (null != this._pendingTransition) {
+                //  keep args for suspended event until transition applied
+                this._suspendedEventable = eventable;
+                this._suspendedArgs = args;
+            }
+            else {
+                postprocessArgsByArgsHandler(eventable, args);
+            }
+        }
+    }
+    
+    /**
+     * @return true means flow suspended, and will be scheduled when pending transition completed,
+     *  false means pending transition has completed and been applied
+     */
+    private boolean suspendByPendingTransition() {
+        final PendingTransition pending = this._pendingTransition;
+        //  ownership of actived mailbox is hand over to whom reset _suspendedBy first: 
+        //  resumer (transition completed) or destroyer (see takeOverSuspended)
+        SUSPENDED_UPDATER.set(this, pending);
+        if (pending.setListener(resumeRunnableOf(pending))) {
+            if ( isDestroyed() && SUSPENDED_UPDATER.compareAndSet(this, pending, null) ) {
+                //  destroyed before suspended, destroyer may miss it, clear by self
+                return false;
+            }
+            if ( logger.isTraceEnabled() ) {
+                logger.trace("flow({}) suspended by pending transition of event:({})", 
+                        this._name, obj2event(this._suspendedEventable));
+            }
+            return true;
+        }
+        if (!SUSPENDED_UPDATER.compareAndSet(this, pending, null)) {
+            //  mailbox taken over by destroyer
+            return true;
+        }
+        applyPendingTransition();
+        return false;
+    }
+    
+    private Runnable resumeRunnableOf(final PendingTransition pending) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                if (SUSPENDED_UPDATER.compareAndSet(FlowContextImpl.this, pending, null)) {
+                    _exectionLoop.submit( _dispatchPendingRunnable );
+                }
+            }};
+    }
+    
+    /**
+     * @return true means flow deferred by DeferrableStatusReactor, 
+     *  and mailbox's ownership has been taken over by invoker
+     */
+    private boolean takeOverDeferred() {
+        return this._statusReactor instanceof DeferrableStatusReactor
+            && ((DeferrableStatusReactor)this._statusReactor).takeOverDeferred(this);
+    }
+    
+    /**
+     * @return true means flow suspended by pending transition, 
+     *  and mailbox's ownership has been taken over by invoker
+     */
+    private boolean takeOverSuspended() {
+        final PendingTransition pending = this._suspendedBy;
+        return null != pending && SUSPENDED_UPDATER.compareAndSet(this, pending, null);
+    }
+    
+    //  invoked by the owner of mailbox only, after pending transition done
+    private void applyPendingTransition() {
+        final PendingTransition pending = this._pendingTransition;
+        final Object eventable = this._suspendedEventable;
+        final Object[] args = this._suspendedArgs;
+        this._pendingTransition = null;
+        this._suspendedEventable = null;
+        this._suspendedArgs = null;
+        final String event = obj2event(eventable);
+        final EventHandler currentHandler = this._currentHandler;
+        if (null != pending.failure()) {
+            logger.error("exception when ({}) complete pending transition for event:({}), detail:{}", 
+                    currentHandler.getName(), 
+                    event,
+                    ExceptionUtils.exception2detail(pending.failure()));
+        }
+        final EventHandler nextHandler = pending.nextHandler();
+        final FlightRecorder recorder = this._recorder;
+        if ( null != recorder ) {
+            //  record transition from handler which suspended by pending
+            recorder.record(EventCodeRegistry.UNKNOWN_CODE, event, currentHandler, nextHandler, 
+                    true, null != pending.failure());
+        }
+        applyTransition(currentHandler, nextHandler, event, args, null != pending.failure());
+        if (null != this._pendingTransition) {
+            //  completed with another pending transition
+            this._suspendedEventable = eventable;
+            this._suspendedArgs = args;
+        }
+        else {
+            postprocessArgsByArgsHandler(eventable, args);
+        }
+    }
+    
+    //  flow destroyed while suspended, release suspended event
+    private void abandonPendingTransition() {
+        if (null != this._pendingTransition) {
+            final Object eventable = this._suspendedEventable;
+            final Object[] args = this._suspendedArgs;
+            this._pendingTransition = null;
+            this._suspendedEventable = null;
+            this._suspendedArgs = null;
+            postprocessArgsByArgsHandler(eventable, args);
         }
     }
 
@@ -400,7 +1948,10 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         }
     }
     
-    private void schedulePendingEvent(final String causeEvent) {
+    /**
+     * @param causeEvent String or Eventable, only used by trace log
+     */
+    private void schedulePendingEvent(final Object causeEvent) {
         if ( this._exectionLoop.inExectionLoop() ) {
             if ( logger.isTraceEnabled()) {
                 logger.trace("flow {}'s currentHandler({}): schedulePendingEvent cause by event:({}) in exectionLoop, just invoke direct.", 
@@ -417,44 +1968,36 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         }
     }	
 	
-    private void checkIfSchedulePendingEvent(final String causeEvent) throws Exception {
-        if (hasPendingEvent()) {
-            if (setActived()) {
-                schedulePendingEvent(causeEvent);
-            }
-            else {
-                if ( logger.isTraceEnabled() ) {
-                    logger.trace("flow {}'s currentHandler({}): already actived, can't schedulePendingEvent cause by event:({})", 
-                            this._name, this._currentHandler.getName(), causeEvent);
-                }
-            }
-        }
-    }
-	
-    private boolean setActived() throws Exception {
+    private boolean setActived() {
         if (isDestroyed()) {
             if ( logger.isTraceEnabled() ) {
                 logger.trace("try setActived for destroyed flow({}), return false", this._name);
             }
             return false;
         }
-        final boolean ret = this._isActived.compareAndSet(false, true);
+        final boolean ret = this._mailbox.tryActivate();
         if (ret) {
-            if (null != this._statusReactor) {
-                try {
-                    this._statusReactor.onActive(this);
-                } catch (Exception e) {
-                    logger.warn("exception when invoke statusReactor.onActive, detail: {}",
-                            ExceptionUtils.exception2detail(e));
-                }
-            }
-            this._lastActiveTime = System.currentTimeMillis();
+            onActived();
         }
         return ret;
     }
 
+    private void onActived() {
+        if (null != this._statusReactor) {
+            try {
+                this._statusReactor.onActive(this);
+            } catch (Exception e) {
+                logger.warn("exception when invoke statusReactor.onActive, detail: {}",
+                        ExceptionUtils.exception2detail(e));
+            }
+        }
+        this._lastActiveTime = System.currentTimeMillis();
+    }
+
     private void setUnactive() {
-        if (this._isActived.compareAndSet(true, false)) {
+        final boolean deactivated = this._mailbox.deactivate();
+        clearIfDestroyed();
+        if (deactivated) {
             this._activeTime.addAndGet(System.currentTimeMillis()
                     - this._lastActiveTime);
             if (null != this._statusReactor) {
@@ -468,43 +2011,94 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         }
     }
 	
-    private boolean dispatchEvent(final String event, final Object[] args) {
+    /**
+     * @param code code of CodedEventable, or EventCodeRegistry.UNKNOWN_CODE
+     */
+    private boolean dispatchEvent(final String event, final int code, final Object[] args) {
         final EventHandler currentHandler = this.getCurrentHandler();
         if ( null == currentHandler ) {
             logger.error("Internal Error: current handler is null when accept event:({}), destroy flow({})", 
                     event, this._name);
+            dumpFlightRecorder("current handler is null");
             this.destroy(event, args);
             return  false;
         }
         
-        setCurrentAcceptedEvent(event);
+        setCurrentAcceptedEvent(event, code);
         
         EventHandler nextHandler = null;
         boolean     eventHandled = false;
+        boolean     exceptionThrown = false;
 
+        final FlowMetrics metrics = this._metrics;
+        final long beginNanos = null != metrics ? System.nanoTime() : 0;
         try {
-            Pair<EventHandler, Boolean> result = currentHandler.process(event, args);
+            //  route by code, without matching event name
+            final Pair<EventHandler, Boolean> result = 
+                    ( code >= 0 && currentHandler instanceof CodedEventHandler )
+                    ? ((CodedEventHandler)currentHandler).process(code, event, args)
+                    : currentHandler.process(event, args);
             nextHandler = result.getFirst();
             eventHandled = result.getSecond();
         }
         catch (Exception e) {
+            exceptionThrown = true;
             logger.error("exception when ({}).acceptEvent(event:({}) ... ), detail:{}", 
                 currentHandler.getName(), 
                 event,
                 ExceptionUtils.exception2detail(e));
         }
         finally {
-            setCurrentAcceptedEvent(null);
+            setCurrentAcceptedEvent(null, EventCodeRegistry.UNKNOWN_CODE);
+        }
+        
+        final FlightRecorder recorder = this._recorder;
+        if ( null != recorder ) {
+            recorder.record(code, event, currentHandler, nextHandler, eventHandled, exceptionThrown);
+        }
+        
+        if ( null != metrics ) {
+            metrics.recordHandle(currentHandler.getName(), System.nanoTime() - beginNanos);
+        }
+        
+        applyTransition(currentHandler, nextHandler, event, args, exceptionThrown);
+        return  eventHandled;
+    }
+    
+    private void applyTransition(
+            final EventHandler currentHandler, 
+            final EventHandler nextHandler, 
+            final String event, 
+            final Object[] args, 
+            final boolean exceptionThrown) {
+        if ( nextHandler instanceof PendingTransition ) {
+            //  suspend flow until pending done, see suspendByPendingTransition
+            this._pendingTransition = (PendingTransition)nextHandler;
+            return;
+        }
+        
+        final FlowMetrics metrics = this._metrics;
+        if ( null != metrics ) {
+            if ( null == nextHandler ) {
+                metrics.recordTransition(currentHandler.getName(), null);
+            }
+            else if ( !currentHandler.equals( nextHandler ) 
+                    && nextHandler != BizStep.CURRENT_BIZSTEP ) {
+                metrics.recordTransition(currentHandler.getName(), nextHandler.getName());
+            }
         }
         
         if ( null == nextHandler ) {
+            if ( exceptionThrown ) {
+                dumpFlightRecorder("end by exception");
+            }
             // handled and next handler is null
             this.destroy(event, args);
             
             if ( logger.isDebugEnabled() ) {
                 logger.debug("flow ({}) end normally for event:({}).", this._name, event);
             }
-            return  eventHandled;
+            return;
         }
         else if ( currentHandler.equals( nextHandler ) 
                 //  return handler is BizStep.CURRENT_BIZSTEP
@@ -515,20 +2109,23 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         else {
             setCurrentHandler(nextHandler, event, args);
         }
-        
-        dispatchPendingEvent();
-        if ( logger.isTraceEnabled() ) {
-            logger.trace("after end of dispatchEvent invoke dispatchPendingEvent for flow({}) cause by event:({}) and _isActived({})",
-                    this._name, event, this._isActived.get());
-        }
-        
-        return  eventHandled;
     }
     
-    private void setCurrentAcceptedEvent(final String event) {
-        if (null!=this._eventNameAware) {
+    private void setCurrentAcceptedEvent(final String event, final int code) {
+        final EventCodeAware[] codeAwares = this._eventCodeAwares;
+        for (int idx = 0; idx < codeAwares.length; idx++) {
             try {
-            	this._eventNameAware.setEventName(event);
+                codeAwares[idx].setEventCode(code);
+            }
+            catch (Exception e) {
+                logger.error("exception when setEventCode: code:({}) to flow {}, detail: {}",
+                    code, this._name, ExceptionUtils.exception2detail(e));
+            }
+        }
+        final EventNameAware[] awares = this._eventNameAwares;
+        for (int idx = 0; idx < awares.length; idx++) {
+            try {
+            	awares[idx].setEventName(event);
             }
             catch (Exception e) {
                 logger.error("exception when setEventName: event:({}) to flow {}, detail: {}",
@@ -537,43 +2134,159 @@ public class FlowContextImpl implements FlowContext, Comparable<FlowContextImpl>
         }
     }
     
+    void setFlightRecorder(final FlightRecorder recorder) {
+        this._recorder = recorder;
+    }
+    
+    /**
+     * @return recent dispatched events of flow, null if flight recorder disabled
+     */
+    public String getFlightRecord() {
+        final FlightRecorder recorder = this._recorder;
+        return null != recorder ? recorder.dump(this._name) : null;
+    }
+    
+    /**
+     * dump flight record when flow end abnormally
+     */
+    void dumpFlightRecorder(final String cause) {
+        final FlightRecorder recorder = this._recorder;
+        if ( null != recorder && recorder.count() > 0 ) {
+            logger.warn("flow({}) {}, {}", this._name, cause, recorder.dump(this._name));
+        }
+    }
+    
+    /**
+     * @param maxEvents max events dispatched in one activation, 0 means unlimited
+     * @param maxNanos  max nanoseconds spent in one activation, 0 means unlimited
+     */
+    public void setDispatchBudget(final int maxEvents, final long maxNanos) {
+        this._maxEventsPerDispatch = maxEvents;
+        this._maxNanosPerDispatch = maxNanos;
+    }
+    
     private final Runnable _dispatchPendingRunnable = new Runnable() {
         public void run() {
             dispatchPendingEvent();
         }
     };
+    
+    private final Runnable _checkExpiryRunnable = new Runnable() {
+        public void run() {
+            checkExpiry();
+        }
+    };
 
-    private final String _name;
-    private final ExectionLoop _exectionLoop;
+    private volatile String _name;
+    private volatile ExectionLoop _exectionLoop;
+    private volatile ExectionLoop _pendingExectionLoop = null;
+    private volatile ExectionLoopGroup _exectionLoopGroup = null;
+    //  loop bound to _exectionLoopGroup, taken by whom unbind it
+    private volatile ExectionLoop _boundExectionLoop = null;
+    private ExectionLoopAware[] _exectionLoopAwares = ReactorShape.NO_EXECTIONLOOP_AWARE;
     
-    private final StatusReactor _statusReactor;
+    private volatile StatusReactor _statusReactor;
     
-    private EventNameAware 	_eventNameAware;
-    private EventHandlerAware _eventHandlerAware;
-    private EndReasonProvider _endReasonProvider;
-    private ExectionLoopAware _exectionLoopAware;
-    private FlowLifecycleListener 	_flowLifecycleListener;
-    private FlowStateChangedListener<EventHandler>	_flowStateChangedListener;
+    private EventNameAware[] 	_eventNameAwares = ReactorShape.NO_EVENTNAME_AWARE;
+    private EventCodeAware[]    _eventCodeAwares = ReactorShape.NO_EVENTCODE_AWARE;
+    private EventHandlerAware[] _eventHandlerAwares = ReactorShape.NO_EVENTHANDLER_AWARE;
+    private FlowLifecycleListener[] 	_flowLifecycleListeners = ReactorShape.NO_LIFECYCLE_LISTENER;
+    @SuppressWarnings("unchecked")
+    private FlowStateChangedListener<EventHandler>[]	_flowStateChangedListeners = 
+            ReactorShape.NO_STATECHANGED_LISTENER;
     
-    private final AtomicBoolean _isActived = new AtomicBoolean(false);
-
-    private final Queue<Pair<Object, Object[]>> _pendingEvents = 
-            new ConcurrentLinkedQueue<>();
+    private final FlowMailbox _mailbox;
+    private volatile PendingLimiter _limiter = null;
+    private volatile PendingLimiter _priorityLimiter = null;
+    private volatile FlowMetrics _metrics = null;
+    private volatile FlightRecorder _recorder = null;
+    
+    private volatile Thread _drainingThread = null;
     
-    private final long _createTime = System.currentTimeMillis();
+    private volatile long _createTime = System.currentTimeMillis();
     private volatile long _lastModify = System.currentTimeMillis();
     private final AtomicLong _activeTime = new AtomicLong(0);
     private volatile long _lastActiveTime;
 
-    private final AtomicBoolean _isAlive = new AtomicBoolean(true);
-    private final ReadWriteLock _destroyingLock = new ReentrantReadWriteLock(false);
-
     private volatile EventHandler _currentHandler = null;
     private volatile Object _reason = null;
+    private EndReasonAware[] _endReasonAwares = ReactorShape.NO_ENDREASON_AWARE;
+    
+    private HashedTimingWheel _timingWheel = null;
+    private long _idleTimeout = 0;
+    private long _timeToLive = 0;
+    private volatile HashedTimingWheel.Timeout _expiryTimeout = null;
+    private volatile TimerList _timers = null;
+    private volatile SnapshotRequest _snapshotRequest = null;
+    
+    //  pending ConflatedEvent by conflation key, created when first conflatable event pushed
+    private volatile ConcurrentMap<Object, ConflatedEvent> _conflatedEvents = null;
+    
+    //  set when handler return PendingTransition, accessed by the owner of mailbox only
+    private PendingTransition _pendingTransition = null;
+    private volatile PendingTransition _suspendedBy = null;
+    private Object _suspendedEventable = null;
+    private Object[] _suspendedArgs = null;
+    
+    private volatile EventJournal _journal = null;
+    private long _journalKey = 0;
+    private Object _journalLock = null;
+    private volatile EventJournal.Record _lastJournaled = null;
+    
+    private volatile EventReceiver _receiver = null;
     
-    private final int _id = _IDSRC.getAndIncrement();
+    private volatile long _bizKey = 0;
+    private volatile boolean _hasBizKey = false;
+    
+    private volatile int _id;
+    
+    private volatile FlowContextPool _pool = null;
+    private volatile int _recycleState = RECYCLE_LIVE;
     
     private volatile boolean	_isFirsttimeActived = true;
+    
+    private volatile int    _maxEventsPerDispatch = DEFAULT_MAX_EVENTS_PER_DISPATCH;
+    private volatile long   _maxNanosPerDispatch = 0;
+	
+    public static final int DEFAULT_MAX_EVENTS_PER_DISPATCH = 256;
 	
+    private static final Object[] EMPTY_ARGS = new Object[0];
+    
+    private static final Detachable STALE_TIMER = new Detachable() {
+        @Override
+        public void detach() {
+        }};
+    
+    private static final long BLOCK_BACKOFF_NANOS = 50000L;
+    
+    private static final int RECYCLE_LIVE = 0;
+    private static final int RECYCLE_DESTROYED = 1;
+    private static final int RECYCLE_POOLED = 2;
+    
+    private static final AtomicIntegerFieldUpdater<FlowContextImpl> RECYCLE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(FlowContextImpl.class, "_recycleState");
+    
+    //  internal offer result: event rejected because journal failed
+    private static final int OFFER_UNJOURNALED = -1;
+    
+    @SuppressWarnings("rawtypes")
+    private static final AtomicReferenceFieldUpdater<FlowContextImpl, ConcurrentMap> CONFLATED_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(FlowContextImpl.class, ConcurrentMap.class, "_conflatedEvents");
+    
+    private static final AtomicReferenceFieldUpdater<FlowContextImpl, PendingTransition> SUSPENDED_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(FlowContextImpl.class, PendingTransition.class, "_suspendedBy");
+    
+    private static final AtomicReferenceFieldUpdater<FlowContextImpl, SnapshotRequest> SNAPSHOT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(FlowContextImpl.class, SnapshotRequest.class, "_snapshotRequest");
+    
+    private static final AtomicReferenceFieldUpdater<FlowContextImpl, TimerList> TIMERS_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(FlowContextImpl.class, TimerList.class, "_timers");
+    
+    private static final AtomicReferenceFieldUpdater<FlowContextImpl, ExectionLoop> PENDING_LOOP_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(FlowContextImpl.class, ExectionLoop.class, "_pendingExectionLoop");
+    
+    private static final AtomicReferenceFieldUpdater<FlowContextImpl, ExectionLoop> BOUND_LOOP_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(FlowContextImpl.class, ExectionLoop.class, "_boundExectionLoop");
+    
     private static final AtomicInteger _IDSRC = new AtomicInteger(0);
 }
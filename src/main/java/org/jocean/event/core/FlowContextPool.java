@@ -0,0 +1,50 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bounded pool of destroyed FlowContextImpl, 
+ *  flow is released into pool only after it's destroyed and its mailbox is no longer owned,
+ *  and reused with new id & generation, so EventReceiver of previous use is rejected.
+ *  
+ * @author isdom
+ *
+ */
+final class FlowContextPool {
+    
+    FlowContextPool(final int capacity) {
+        this._pooled = new ArrayBlockingQueue<>(capacity);
+    }
+    
+    /**
+     * @return recycled ctx which SHOULD be reused, or null if pool is empty
+     */
+    FlowContextImpl acquire() {
+        final FlowContextImpl ctx = this._pooled.poll();
+        if (null != ctx) {
+            this._reusedCount.incrementAndGet();
+        }
+        return ctx;
+    }
+    
+    void release(final FlowContextImpl ctx) {
+        //  drop it when pool is full
+        this._pooled.offer(ctx);
+    }
+    
+    int size() {
+        return this._pooled.size();
+    }
+    
+    long reusedCount() {
+        return this._reusedCount.get();
+    }
+    
+    private final BlockingQueue<FlowContextImpl> _pooled;
+    private final AtomicLong _reusedCount = new AtomicLong(0);
+}
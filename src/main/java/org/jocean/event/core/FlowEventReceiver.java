@@ -0,0 +1,13 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * @author isdom
+ *
+ */
+interface FlowEventReceiver extends BatchEventReceiver, BackpressureSource {
+    
+    public FlowContextImpl flowContext();
+}
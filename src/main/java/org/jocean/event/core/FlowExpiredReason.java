@@ -0,0 +1,24 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * end reason of flow destroyed by FlowContainer's expiry policy,
+ *  see FlowContext.getEndReason and EndReasonAware
+ * 
+ * @author isdom
+ *
+ */
+public enum FlowExpiredReason {
+    
+    /**
+     * flow has not been actived or changed its handler for idle timeout
+     */
+    IDLE_TIMEOUT,
+    
+    /**
+     * flow has been alive longer than time to live
+     */
+    TIME_TO_LIVE_EXCEEDED
+}
@@ -0,0 +1,377 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * pending events queue of one flow: multi producers & single consumer.
+ *
+ * alive/active/closed and in-flight producers count are all encoded in one state word:
+ *  bit 0       : ACTIVE, someone own the right to consume (dispatch) events
+ *  bit 1       : CLOSED, flow has been destroyed, offer will be rejected
+ *  bit 2 ~ 63  : count of producers which are enqueuing event now
+ *
+ * close wait for all in-flight producers, so every event accepted before close
+ * can be seen by the consumer who drain mailbox after close.
+ *
+ * event of PriorityEventable is enqueued to priority lane (created lazily when first used),
+ * and polled before events of normal lane, order is kept within each lane.
+ *
+ * closed & drained mailbox can be reopened for next user (see FlowContextPool),
+ * producer offer with the generation it known, and is rejected when generation changed.
+ *
+ * poll/isEmpty/forEach/release MUST be invoked by the owner of ACTIVE,
+ * except pollExclusively/isEmptyExclusively/forEachExclusively: when flow may drop oldest event from producer,
+ * all poll (both owner and producer) MUST go through them.
+ *
+ * @author isdom
+ *
+ */
+abstract class FlowMailbox {
+
+    static class Envelope {
+
+        Object eventable() {
+            return this._eventable;
+        }
+
+        Object[] args() {
+            return this._args;
+        }
+
+        /**
+         * @return System.nanoTime() when event enqueued, 0 if not recorded
+         */
+        long enqueueNanos() {
+            return this._enqueueNanos;
+        }
+
+        void fill(final Object eventable, final Object[] args, final long enqueueNanos) {
+            this._eventable = eventable;
+            this._args = args;
+            this._enqueueNanos = enqueueNanos;
+        }
+
+        void clear() {
+            this._eventable = null;
+            this._args = null;
+        }
+
+        private Object _eventable;
+        private Object[] _args;
+        private long _enqueueNanos;
+    }
+
+    interface Visitor {
+        public void visit(final Envelope envelope);
+    }
+
+    static final int OFFER_REJECTED = 0;
+    static final int OFFER_ENQUEUED = 1;
+    static final int OFFER_ACTIVATED = 2;
+    static final int OFFER_FULL = 3;
+
+    /**
+     * @return OFFER_REJECTED when mailbox closed,
+     *      OFFER_ACTIVATED when event enqueued and caller has set mailbox ACTIVE,
+     *          so caller MUST schedule dispatch,
+     *      OFFER_ENQUEUED when event enqueued and mailbox has been actived by others,
+     *      OFFER_FULL when bounded mailbox has no room for event.
+     */
+    int offer(final Object eventable, final Object[] args, final long enqueueNanos, 
+            final int generation) {
+        return offer(eventable, args, enqueueNanos, generation, eventable instanceof PriorityEventable);
+    }
+
+    int offer(final Object eventable, final Object[] args, final long enqueueNanos, 
+            final int generation, final boolean priority) {
+        if (!enter(generation)) {
+            return OFFER_REJECTED;
+        }
+        if (priority) {
+            //  priority lane never reject control event as full, 
+            //  it's bounded by flow's priority limiter before offer
+            priorityLane().enqueue(eventable, args, enqueueNanos);
+        }
+        else if (!enqueue(eventable, args, enqueueNanos)) {
+            leave();
+            return OFFER_FULL;
+        }
+        return leaveAndTryActivate() ? OFFER_ACTIVATED : OFFER_ENQUEUED;
+    }
+
+    Envelope poll() {
+        final LinkedFlowMailbox lane = this._priorityLane;
+        if (null != lane) {
+            final Envelope envelope = lane.pollNormal();
+            if (null != envelope) {
+                return envelope;
+            }
+        }
+        return pollNormal();
+    }
+
+    /**
+     * recycle envelope returned by poll, after event and args has been processed
+     */
+    void release(final Envelope envelope) {
+        if (envelope instanceof LinkedFlowMailbox.Node) {
+            //  node of priority lane (or of linked mailbox): just clear payload
+            envelope.clear();
+        }
+        else {
+            releaseNormal(envelope);
+        }
+    }
+
+    boolean isEmpty() {
+        final LinkedFlowMailbox lane = this._priorityLane;
+        return (null == lane || lane.isEmptyNormal()) && isEmptyNormal();
+    }
+
+    /**
+     * visit pending events in dispatch order (priority lane first), without consume them
+     */
+    void forEach(final Visitor visitor) {
+        final LinkedFlowMailbox lane = this._priorityLane;
+        if (null != lane) {
+            lane.forEachNormal(visitor);
+        }
+        forEachNormal(visitor);
+    }
+
+    /**
+     * poll oldest event of normal lane only, used to drop oldest event, 
+     *  priority event is never dropped
+     */
+    Envelope pollNormalExclusively() {
+        lockPoll();
+        try {
+            return pollNormal();
+        }
+        finally {
+            POLL_LOCK_UPDATER.lazySet(this, 0);
+        }
+    }
+
+    private LinkedFlowMailbox priorityLane() {
+        final LinkedFlowMailbox lane = this._priorityLane;
+        if (null != lane) {
+            return lane;
+        }
+        PRIORITY_LANE_UPDATER.compareAndSet(this, null, new LinkedFlowMailbox());
+        return this._priorityLane;
+    }
+
+    abstract Envelope pollNormal();
+
+    abstract void releaseNormal(final Envelope envelope);
+
+    abstract boolean isEmptyNormal();
+
+    abstract void forEachNormal(final Visitor visitor);
+
+    Envelope pollExclusively() {
+        lockPoll();
+        try {
+            return poll();
+        }
+        finally {
+            POLL_LOCK_UPDATER.lazySet(this, 0);
+        }
+    }
+
+    boolean isEmptyExclusively() {
+        lockPoll();
+        try {
+            return isEmpty();
+        }
+        finally {
+            POLL_LOCK_UPDATER.lazySet(this, 0);
+        }
+    }
+
+    void forEachExclusively(final Visitor visitor) {
+        lockPoll();
+        try {
+            forEach(visitor);
+        }
+        finally {
+            POLL_LOCK_UPDATER.lazySet(this, 0);
+        }
+    }
+
+    private void lockPoll() {
+        while (!POLL_LOCK_UPDATER.compareAndSet(this, 0, 1)) {
+            Thread.yield();
+        }
+    }
+
+    /**
+     * enqueue to normal lane
+     * @return false means mailbox is full
+     */
+    abstract boolean enqueue(final Object eventable, final Object[] args, final long enqueueNanos);
+
+    /**
+     * enqueue first count events atomically in order, 
+     * no event from other producer can be interleaved.
+     * @return count of events enqueued, bounded mailbox may only enqueue prefix of events
+     */
+    abstract int enqueueAll(final Object[] eventables, final Object[][] args, final int count, 
+            final long enqueueNanos);
+
+    boolean tryActivate() {
+        for (;;) {
+            final long state = this._state;
+            if ((state & (ACTIVE | CLOSED)) != 0) {
+                return false;
+            }
+            if (STATE_UPDATER.compareAndSet(this, state, state | ACTIVE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * acquire ACTIVE even if mailbox has been closed, used to drain closed mailbox
+     */
+    boolean tryAcquire() {
+        for (;;) {
+            final long state = this._state;
+            if ((state & ACTIVE) != 0) {
+                return false;
+            }
+            if (STATE_UPDATER.compareAndSet(this, state, state | ACTIVE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true means ACTIVE has been cleared by this invoke
+     */
+    boolean deactivate() {
+        for (;;) {
+            final long state = this._state;
+            if ((state & ACTIVE) == 0) {
+                return false;
+            }
+            if (STATE_UPDATER.compareAndSet(this, state, state & ~ACTIVE)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * @return true means mailbox closed by this invoke,
+     *  and all events accepted before close has been enqueued
+     */
+    boolean close() {
+        for (;;) {
+            final long state = this._state;
+            if ((state & CLOSED) != 0) {
+                return false;
+            }
+            if (STATE_UPDATER.compareAndSet(this, state, state | CLOSED)) {
+                break;
+            }
+        }
+        //  wait for in-flight producers, they are only enqueuing event
+        while ((this._state & PRODUCERS_MASK) != 0) {
+            Thread.yield();
+        }
+        return true;
+    }
+
+    boolean isActive() {
+        return (this._state & ACTIVE) != 0;
+    }
+
+    boolean isClosed() {
+        return (this._state & CLOSED) != 0;
+    }
+
+    int generation() {
+        return this._generation;
+    }
+
+    /**
+     * reopen closed & drained mailbox, MUST be invoked when no one own ACTIVE
+     */
+    void reopen() {
+        //  bump generation before clear CLOSED, 
+        //  so producer which enter after reopen always see new generation
+        this._generation++;
+        for (;;) {
+            final long state = this._state;
+            if (STATE_UPDATER.compareAndSet(this, state, state & ~CLOSED)) {
+                return;
+            }
+        }
+    }
+
+    boolean enter(final int generation) {
+        if (!enter()) {
+            return false;
+        }
+        if (this._generation != generation) {
+            leave();
+            return false;
+        }
+        return true;
+    }
+
+    boolean enter() {
+        final long state = STATE_UPDATER.getAndAdd(this, PRODUCER);
+        if ((state & CLOSED) != 0) {
+            STATE_UPDATER.getAndAdd(this, -PRODUCER);
+            return false;
+        }
+        return true;
+    }
+
+    void leave() {
+        STATE_UPDATER.getAndAdd(this, -PRODUCER);
+    }
+
+    boolean leaveAndTryActivate() {
+        for (;;) {
+            final long state = this._state;
+            final boolean activate = (state & (ACTIVE | CLOSED)) == 0;
+            final long next = activate
+                    ? (state - PRODUCER) | ACTIVE
+                    : state - PRODUCER;
+            if (STATE_UPDATER.compareAndSet(this, state, next)) {
+                return activate;
+            }
+        }
+    }
+
+    private static final long ACTIVE = 1L;
+    private static final long CLOSED = 2L;
+    private static final long PRODUCER = 4L;
+    private static final long PRODUCERS_MASK = ~(ACTIVE | CLOSED);
+
+    private static final AtomicLongFieldUpdater<FlowMailbox> STATE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(FlowMailbox.class, "_state");
+
+    private static final AtomicIntegerFieldUpdater<FlowMailbox> POLL_LOCK_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(FlowMailbox.class, "_pollLock");
+
+    private static final AtomicReferenceFieldUpdater<FlowMailbox, LinkedFlowMailbox> PRIORITY_LANE_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(FlowMailbox.class, LinkedFlowMailbox.class, "_priorityLane");
+
+    private volatile long _state = 0;
+
+    private volatile int _pollLock = 0;
+
+    private volatile int _generation = 0;
+
+    //  only its queue part (enqueue/pollNormal/...) is used, state word of lane is unused
+    private volatile LinkedFlowMailbox _priorityLane = null;
+}
@@ -0,0 +1,197 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * opt-in metrics of flows in one FlowContainer (see FlowContainer.setMetricsEnabled):
+ *  queue wait:     nanoseconds from event enqueued to its dispatch
+ *  handle time:    nanoseconds spent in EventHandler.process, total and by state (handler name)
+ *  dispatched:     events dispatched, and events per second since last reset
+ *  unhandled:      events rejected, cleared or not handled by current handler
+ *  transitions:    count of state changed, keyed by "from->to" (to is "END" when flow end)
+ *  
+ * @author isdom
+ *
+ */
+public final class FlowMetrics {
+    
+    public static final String END_STATE = "END";
+    
+    public static final class Snapshot {
+        
+        private Snapshot(
+                final LatencyHistogram.Snapshot queueWait,
+                final LatencyHistogram.Snapshot handleTime,
+                final Map<String, LatencyHistogram.Snapshot> handleTimeByState,
+                final Map<String, Long> transitions,
+                final long dispatchedCount,
+                final long unhandledCount,
+                final long elapsedNanos) {
+            this._queueWait = queueWait;
+            this._handleTime = handleTime;
+            this._handleTimeByState = Collections.unmodifiableMap(handleTimeByState);
+            this._transitions = Collections.unmodifiableMap(transitions);
+            this._dispatchedCount = dispatchedCount;
+            this._unhandledCount = unhandledCount;
+            this._elapsedNanos = elapsedNanos;
+        }
+        
+        public LatencyHistogram.Snapshot getQueueWait() {
+            return this._queueWait;
+        }
+        
+        public LatencyHistogram.Snapshot getHandleTime() {
+            return this._handleTime;
+        }
+        
+        public Map<String, LatencyHistogram.Snapshot> getHandleTimeByState() {
+            return this._handleTimeByState;
+        }
+        
+        public Map<String, Long> getTransitions() {
+            return this._transitions;
+        }
+        
+        public long getDispatchedCount() {
+            return this._dispatchedCount;
+        }
+        
+        public long getUnhandledCount() {
+            return this._unhandledCount;
+        }
+        
+        /**
+         * @return nanoseconds since metrics created or last reset
+         */
+        public long getElapsedNanos() {
+            return this._elapsedNanos;
+        }
+        
+        public double getEventsPerSecond() {
+            return this._elapsedNanos > 0 
+                    ? this._dispatchedCount * 1e9 / this._elapsedNanos
+                    : 0.0;
+        }
+        
+        @Override
+        public String toString() {
+            return "FlowMetrics [dispatched=" + this._dispatchedCount 
+                    + ", eventsPerSecond=" + (long)getEventsPerSecond()
+                    + ", unhandled=" + this._unhandledCount 
+                    + ", queueWait=" + this._queueWait 
+                    + ", handleTime=" + this._handleTime
+                    + ", handleTimeByState=" + this._handleTimeByState 
+                    + ", transitions=" + this._transitions + "]";
+        }
+        
+        private final LatencyHistogram.Snapshot _queueWait;
+        private final LatencyHistogram.Snapshot _handleTime;
+        private final Map<String, LatencyHistogram.Snapshot> _handleTimeByState;
+        private final Map<String, Long> _transitions;
+        private final long _dispatchedCount;
+        private final long _unhandledCount;
+        private final long _elapsedNanos;
+    }
+    
+    FlowMetrics() {
+    }
+    
+    void recordQueueWait(final long nanos) {
+        this._queueWait.record(nanos);
+    }
+    
+    void recordHandle(final String state, final long nanos) {
+        this._dispatched.increment();
+        this._handleTime.record(nanos);
+        histogramOf(state).record(nanos);
+    }
+    
+    void recordTransition(final String from, final String to) {
+        final String key = from + "->" + (null != to ? to : END_STATE);
+        AtomicLong counter = this._transitions.get(key);
+        if (null == counter) {
+            final AtomicLong newCounter = new AtomicLong(0);
+            counter = this._transitions.putIfAbsent(key, newCounter);
+            if (null == counter) {
+                counter = newCounter;
+            }
+        }
+        counter.incrementAndGet();
+    }
+    
+    void recordUnhandled() {
+        this._unhandled.increment();
+    }
+    
+    public Snapshot snapshot() {
+        final Map<String, LatencyHistogram.Snapshot> byState = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : this._handleTimeByState.entrySet()) {
+            byState.put(entry.getKey(), entry.getValue().snapshot());
+        }
+        final Map<String, Long> transitions = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : this._transitions.entrySet()) {
+            transitions.put(entry.getKey(), entry.getValue().get());
+        }
+        return new Snapshot(
+                this._queueWait.snapshot(), 
+                this._handleTime.snapshot(), 
+                byState, 
+                transitions, 
+                this._dispatched.sum(), 
+                this._unhandled.sum(), 
+                System.nanoTime() - this._resetTime);
+    }
+    
+    /**
+     * snapshot, then restart all counters and histograms from zero
+     */
+    public Snapshot snapshotAndReset() {
+        final long now = System.nanoTime();
+        final Map<String, LatencyHistogram.Snapshot> byState = new HashMap<>();
+        for (Map.Entry<String, LatencyHistogram> entry : this._handleTimeByState.entrySet()) {
+            byState.put(entry.getKey(), entry.getValue().snapshotAndReset());
+        }
+        final Map<String, Long> transitions = new HashMap<>();
+        for (Map.Entry<String, AtomicLong> entry : this._transitions.entrySet()) {
+            transitions.put(entry.getKey(), entry.getValue().getAndSet(0));
+        }
+        final Snapshot snapshot = new Snapshot(
+                this._queueWait.snapshotAndReset(), 
+                this._handleTime.snapshotAndReset(), 
+                byState, 
+                transitions, 
+                this._dispatched.sumThenReset(), 
+                this._unhandled.sumThenReset(), 
+                now - this._resetTime);
+        this._resetTime = now;
+        return snapshot;
+    }
+    
+    private LatencyHistogram histogramOf(final String state) {
+        final LatencyHistogram histogram = this._handleTimeByState.get(state);
+        if (null != histogram) {
+            return histogram;
+        }
+        final LatencyHistogram newHistogram = new LatencyHistogram();
+        final LatencyHistogram exist = this._handleTimeByState.putIfAbsent(state, newHistogram);
+        return null != exist ? exist : newHistogram;
+    }
+    
+    private final LatencyHistogram _queueWait = new LatencyHistogram();
+    private final LatencyHistogram _handleTime = new LatencyHistogram();
+    private final ConcurrentMap<String, LatencyHistogram> _handleTimeByState = 
+            new ConcurrentHashMap<String, LatencyHistogram>();
+    private final ConcurrentMap<String, AtomicLong> _transitions = 
+            new ConcurrentHashMap<String, AtomicLong>();
+    private final StripedCounter _dispatched = new StripedCounter();
+    private final StripedCounter _unhandled = new StripedCounter();
+    private volatile long _resetTime = System.nanoTime();
+}
@@ -0,0 +1,25 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.EventEngine;
+import org.jocean.event.api.EventReceiver;
+
+/**
+ * rebuild flow from snapshot: create flow (with its reactors) by engine.create,
+ *  and init handler SHOULD be the one named handlerName, 
+ *  then container restore timing, end reason and pending events of flow.
+ * 
+ * @author isdom
+ *
+ */
+public interface FlowRestorer {
+    
+    /**
+     * @param handlerName name of flow's current EventHandler when snapshot (eg: name of BizStep)
+     * @return EventReceiver created by engine, null means skip this flow
+     */
+    public EventReceiver restore(final EventEngine engine, final String flowName, final String handlerName) 
+            throws Exception;
+}
@@ -0,0 +1,227 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * captured state of one flow, and binary format of snapshot file:
+ *  file    : MAGIC(int) VERSION(int) count(int) [length(int) record]*count
+ *  record  : name(utf) handlerName(utf) createTime(long) lastModify(long)
+ *            hasBizKey(boolean) bizKey(long) endReason(bytes)
+ *            pendingCount(int) [event(utf) args(bytes)]*pendingCount
+ *  bytes   : length(int, -1 means null) content
+ *
+ * file is written & read by memory-mapped I/O,
+ *  and written to temp file first, then renamed, so crash during snapshot never corrupt previous one.
+ *
+ * @author isdom
+ *
+ */
+final class FlowSnapshot {
+
+    FlowSnapshot(final String name,
+            final String handlerName,
+            final long createTime,
+            final long lastModify,
+            final boolean hasBizKey,
+            final long bizKey,
+            final Object endReason,
+            final String[] events,
+            final Object[][] args) {
+        this._name = name;
+        this._handlerName = handlerName;
+        this._createTime = createTime;
+        this._lastModify = lastModify;
+        this._hasBizKey = hasBizKey;
+        this._bizKey = bizKey;
+        this._endReason = endReason;
+        this._events = events;
+        this._args = args;
+    }
+
+    String name() {
+        return this._name;
+    }
+
+    String handlerName() {
+        return this._handlerName;
+    }
+
+    long createTime() {
+        return this._createTime;
+    }
+
+    long lastModify() {
+        return this._lastModify;
+    }
+
+    boolean hasBizKey() {
+        return this._hasBizKey;
+    }
+
+    long bizKey() {
+        return this._bizKey;
+    }
+
+    Object endReason() {
+        return this._endReason;
+    }
+
+    String[] events() {
+        return this._events;
+    }
+
+    Object[][] args() {
+        return this._args;
+    }
+
+    byte[] encode(final ArgsSerializer serializer) throws Exception {
+        final ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        final DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF(null != this._name ? this._name : "");
+        out.writeUTF(null != this._handlerName ? this._handlerName : "");
+        out.writeLong(this._createTime);
+        out.writeLong(this._lastModify);
+        out.writeBoolean(this._hasBizKey);
+        out.writeLong(this._bizKey);
+        writeBytes(out, null != this._endReason
+                ? serializer.serialize(null, new Object[]{this._endReason})
+                : null);
+        out.writeInt(this._events.length);
+        for (int idx = 0; idx < this._events.length; idx++) {
+            out.writeUTF(this._events[idx]);
+            writeBytes(out, serializer.serialize(this._events[idx],
+                    null != this._args[idx] ? this._args[idx] : EMPTY_ARGS));
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static FlowSnapshot decode(final byte[] record, final ArgsSerializer serializer) throws Exception {
+        final DataInputStream in = new DataInputStream(new ByteArrayInputStream(record));
+        final String name = in.readUTF();
+        final String handlerName = in.readUTF();
+        final long createTime = in.readLong();
+        final long lastModify = in.readLong();
+        final boolean hasBizKey = in.readBoolean();
+        final long bizKey = in.readLong();
+        final byte[] reasonBytes = readBytes(in);
+        final Object[] reason = null != reasonBytes ? serializer.deserialize(null, reasonBytes) : null;
+        final int count = in.readInt();
+        final String[] events = new String[count];
+        final Object[][] args = new Object[count][];
+        for (int idx = 0; idx < count; idx++) {
+            events[idx] = in.readUTF();
+            final byte[] argsBytes = readBytes(in);
+            args[idx] = null != argsBytes ? serializer.deserialize(events[idx], argsBytes) : EMPTY_ARGS;
+        }
+        return new FlowSnapshot(name, handlerName, createTime, lastModify, hasBizKey, bizKey,
+                null != reason && reason.length > 0 ? reason[0] : null,
+                events, args);
+    }
+
+    static void writeTo(final File file, final List<byte[]> records) throws IOException {
+        long size = HEADER_SIZE;
+        for (byte[] record : records) {
+            size += 4 + record.length;
+        }
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("snapshot too large: " + size + " bytes");
+        }
+        final File tmp = new File(file.getPath() + ".tmp");
+        final RandomAccessFile raf = new RandomAccessFile(tmp, "rw");
+        try {
+            raf.setLength(size);
+            final MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buf.putInt(MAGIC);
+            buf.putInt(VERSION);
+            buf.putInt(records.size());
+            for (byte[] record : records) {
+                buf.putInt(record.length);
+                buf.put(record);
+            }
+            buf.force();
+        }
+        finally {
+            raf.close();
+        }
+        Files.move(tmp.toPath(), file.toPath(),
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    static List<byte[]> readFrom(final File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            final long size = raf.length();
+            if (size < HEADER_SIZE) {
+                throw new IOException("invalid snapshot file " + file + ": too short");
+            }
+            final MappedByteBuffer buf = raf.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw new IOException("invalid snapshot file " + file + ": unknown magic or version");
+            }
+            final int count = buf.getInt();
+            final List<byte[]> records = new ArrayList<>(count);
+            for (int idx = 0; idx < count; idx++) {
+                final byte[] record = new byte[buf.getInt()];
+                buf.get(record);
+                records.add(record);
+            }
+            return records;
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static void writeBytes(final DataOutputStream out, final byte[] bytes) throws IOException {
+        if (null == bytes) {
+            out.writeInt(-1);
+        }
+        else {
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static byte[] readBytes(final DataInputStream in) throws IOException {
+        final int length = in.readInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        in.readFully(bytes);
+        return bytes;
+    }
+
+    //  'JFSN'
+    private static final int MAGIC = 0x4a46534e;
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 12;
+
+    private static final Object[] EMPTY_ARGS = new Object[0];
+
+    private final String _name;
+    private final String _handlerName;
+    private final long _createTime;
+    private final long _lastModify;
+    private final boolean _hasBizKey;
+    private final long _bizKey;
+    private final Object _endReason;
+    private final String[] _events;
+    private final Object[][] _args;
+}
@@ -0,0 +1,200 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+import org.jocean.idiom.Detachable;
+import org.jocean.idiom.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * hashed timing wheel driven by one daemon ticker thread:
+ *  newTimeout & cancel are O(1) and never touch the wheel, 
+ *  new timeouts are handed to ticker by a concurrent queue, 
+ *  cancelled timeouts are removed lazily when ticker visit its bucket.
+ *  timeout longer than one round of wheel wait in bucket with remaining rounds.
+ *  
+ * task of timeout is run by ticker thread, so it MUST be short and MUST NOT block,
+ *  eg: just submit real work to ExectionLoop.
+ *  
+ * @author isdom
+ *
+ */
+final class HashedTimingWheel {
+    
+    private static final Logger LOG = 
+            LoggerFactory.getLogger(HashedTimingWheel.class);
+    
+    static HashedTimingWheel shared() {
+        return SharedHolder.WHEEL;
+    }
+    
+    private static final class SharedHolder {
+        static final HashedTimingWheel WHEEL = new HashedTimingWheel("flow-timing-wheel", 10, 1024);
+    }
+    
+    static final class Timeout implements Detachable {
+        
+        private Timeout(final Runnable task, final long deadline) {
+            this._task = task;
+            this._deadline = deadline;
+        }
+        
+        /**
+         * cancel timeout, task will not be run if it has not been run
+         */
+        @Override
+        public void detach() {
+            STATE_UPDATER.compareAndSet(this, ST_INIT, ST_CANCELLED);
+        }
+        
+        boolean isCancelled() {
+            return ST_CANCELLED == this._state;
+        }
+        
+        private boolean expire() {
+            return STATE_UPDATER.compareAndSet(this, ST_INIT, ST_EXPIRED);
+        }
+        
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+        
+        private static final AtomicIntegerFieldUpdater<Timeout> STATE_UPDATER =
+                AtomicIntegerFieldUpdater.newUpdater(Timeout.class, "_state");
+        
+        private final Runnable _task;
+        //  nanoseconds since wheel started
+        private final long _deadline;
+        private volatile int _state = ST_INIT;
+        
+        //  only accessed by ticker thread
+        private long _remainingRounds;
+        private Timeout _next;
+    }
+    
+    HashedTimingWheel(final String name, final long tickMillis, final int ticksPerWheel) {
+        int wheelSize = 1;
+        while (wheelSize < ticksPerWheel) {
+            wheelSize <<= 1;
+        }
+        this._buckets = new Timeout[wheelSize];
+        this._mask = wheelSize - 1;
+        this._tickNanos = TimeUnit.MILLISECONDS.toNanos(Math.max(1, tickMillis));
+        this._startTime = System.nanoTime();
+        this._ticker = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                runTicker();
+            }}, name);
+        this._ticker.setDaemon(true);
+        this._ticker.start();
+    }
+    
+    Timeout newTimeout(final Runnable task, final long delayMillis) {
+        final Timeout timeout = new Timeout(task, 
+                System.nanoTime() - this._startTime + TimeUnit.MILLISECONDS.toNanos(Math.max(0, delayMillis)));
+        this._newTimeouts.add(timeout);
+        return timeout;
+    }
+    
+    void stop() {
+        this._stopped = true;
+        this._ticker.interrupt();
+    }
+    
+    private void runTicker() {
+        long tick = 0;
+        while (!this._stopped) {
+            final long tickDeadline = this._tickNanos * (tick + 1);
+            final long sleepNanos = tickDeadline - (System.nanoTime() - this._startTime);
+            if (sleepNanos > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(sleepNanos);
+                } catch (InterruptedException e) {
+                    continue;
+                }
+            }
+            transferNewTimeouts(tick);
+            expireBucket((int)tick & this._mask, tickDeadline);
+            tick++;
+        }
+    }
+    
+    private void transferNewTimeouts(final long currentTick) {
+        //  bound transfer count, so ticker never starve by busy producers
+        for (int count = 0; count < MAX_TRANSFER_PER_TICK; count++) {
+            final Timeout timeout = this._newTimeouts.poll();
+            if (null == timeout) {
+                return;
+            }
+            if (timeout.isCancelled()) {
+                continue;
+            }
+            final long calculated = timeout._deadline / this._tickNanos;
+            timeout._remainingRounds = (calculated - currentTick) / this._buckets.length;
+            //  deadline already passed: put into current bucket
+            final int idx = (int)Math.max(calculated, currentTick) & this._mask;
+            timeout._next = this._buckets[idx];
+            this._buckets[idx] = timeout;
+        }
+    }
+    
+    private void expireBucket(final int idx, final long tickDeadline) {
+        Timeout prev = null;
+        Timeout timeout = this._buckets[idx];
+        while (null != timeout) {
+            final Timeout next = timeout._next;
+            boolean remove = true;
+            if (timeout.isCancelled()) {
+                //  just remove
+            }
+            else if (timeout._remainingRounds <= 0 && timeout._deadline <= tickDeadline) {
+                if (timeout.expire()) {
+                    try {
+                        timeout._task.run();
+                    }
+                    catch (Throwable e) {
+                        LOG.warn("exception when run timeout task {}, detail: {}", 
+                                timeout._task, ExceptionUtils.exception2detail(e));
+                    }
+                }
+            }
+            else {
+                timeout._remainingRounds--;
+                remove = false;
+            }
+            if (remove) {
+                if (null == prev) {
+                    this._buckets[idx] = next;
+                }
+                else {
+                    prev._next = next;
+                }
+                timeout._next = null;
+            }
+            else {
+                prev = timeout;
+            }
+            timeout = next;
+        }
+    }
+    
+    private static final int MAX_TRANSFER_PER_TICK = 100000;
+    
+    private final Queue<Timeout> _newTimeouts = new ConcurrentLinkedQueue<Timeout>();
+    
+    //  only accessed by ticker thread
+    private final Timeout[] _buckets;
+    private final int _mask;
+    private final long _tickNanos;
+    private final long _startTime;
+    private final Thread _ticker;
+    private volatile boolean _stopped = false;
+}
@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.Arrays;
+
+import org.jocean.event.api.internal.EventHandler;
+import org.jocean.idiom.Pair;
+
+/**
+ * CodedEventHandler route event to action by array index of event code:
+ *  CodedEventable is routed without any string hashing or equals,
+ *  String event still works, by looking up its code in EventCodeRegistry.
+ *  
+ * eg:
+ *  static final CodedEventable COIN = EventCodeRegistry.register("coin");
+ *  final IndexedEventHandler LOCKED = new IndexedEventHandler("LOCKED")
+ *      .handler(COIN, new IndexedEventHandler.Action() {
+ *          public EventHandler onEvent(final String event, final Object[] args) {
+ *              return UNLOCKED;
+ *          }});
+ *  
+ * @author isdom
+ *
+ */
+public class IndexedEventHandler implements CodedEventHandler {
+    
+    public interface Action {
+        /**
+         * @return next EventHandler, null means end flow, 
+         *  BizStep.CURRENT_BIZSTEP or this means keep current EventHandler
+         */
+        public EventHandler onEvent(final String event, final Object[] args) throws Exception;
+    }
+    
+    public IndexedEventHandler(final String name) {
+        this._name = name;
+    }
+    
+    /**
+     * add action for event, SHOULD be done before handler used by flow
+     */
+    public synchronized IndexedEventHandler handler(final CodedEventable event, final Action action) {
+        final int code = event.code();
+        final Action[] actions = code < this._actions.length 
+                ? this._actions.clone()
+                : Arrays.copyOf(this._actions, code + 1);
+        actions[code] = action;
+        this._actions = actions;
+        return this;
+    }
+    
+    @Override
+    public String getName() {
+        return this._name;
+    }
+
+    @Override
+    public Pair<EventHandler, Boolean> process(final String event, final Object[] args) 
+            throws Exception {
+        return process(EventCodeRegistry.codeOf(event), event, args);
+    }
+    
+    @Override
+    public Pair<EventHandler, Boolean> process(final int code, final String event, final Object[] args) 
+            throws Exception {
+        final Action[] actions = this._actions;
+        final Action action = code >= 0 && code < actions.length ? actions[code] : null;
+        if (null == action) {
+            return this._unhandled;
+        }
+        final EventHandler next = action.onEvent(event, args);
+        return next == this ? this._handled : Pair.of(next, true);
+    }
+    
+    @Override
+    public String toString() {
+        return "IndexedEventHandler [" + this._name + "]";
+    }
+    
+    private static final Action[] NO_ACTIONS = new Action[0];
+    
+    private final String _name;
+    private volatile Action[] _actions = NO_ACTIONS;
+    private final Pair<EventHandler, Boolean> _handled = Pair.<EventHandler, Boolean>of(this, true);
+    private final Pair<EventHandler, Boolean> _unhandled = Pair.<EventHandler, Boolean>of(this, false);
+}
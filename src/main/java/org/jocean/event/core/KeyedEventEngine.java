@@ -0,0 +1,41 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.EventEngine;
+import org.jocean.event.api.EventReceiver;
+import org.jocean.event.api.internal.EventHandler;
+import org.jocean.event.api.internal.Eventable;
+
+/**
+ * EventEngine which bind flow to business key (eg: session id or transaction id),
+ *  the binding is removed automatically when flow destroyed.
+ *  
+ * @author isdom
+ *
+ */
+public interface KeyedEventEngine extends EventEngine {
+    
+    /**
+     * @return EventReceiver of live flow bound to key, 
+     *  or create new flow and bind it to key if no live flow bound to key
+     */
+    public EventReceiver createIfAbsent(final long key, 
+            final String name, final EventHandler init, final Object... reactors);
+    
+    /**
+     * @return EventReceiver of live flow bound to key, or null
+     */
+    public EventReceiver getEventReceiver(final long key);
+    
+    /**
+     * @return false if no live flow bound to key, or event not accepted by the flow
+     */
+    public boolean acceptEvent(final long key, final String event, final Object... args);
+    
+    /**
+     * @return false if no live flow bound to key, or event not accepted by the flow
+     */
+    public boolean acceptEvent(final long key, final Eventable eventable, final Object... args);
+}
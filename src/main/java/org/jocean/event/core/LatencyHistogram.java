@@ -0,0 +1,127 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * lock-free histogram of nanoseconds with power of 2 buckets:
+ *  bucket 0 count value 0, bucket i count value in [2^(i-1), 2^i).
+ *  record is one atomic add for bucket and one for sum, 
+ *  max updated by CAS only when new max found.
+ *  
+ * snapshotAndReset take each bucket atomically, no record is lost or counted twice,
+ *  but snapshot of buckets is not atomic as a whole under concurrent record.
+ * 
+ * @author isdom
+ *
+ */
+public final class LatencyHistogram {
+    
+    public static final class Snapshot {
+        
+        private Snapshot(final long[] buckets, final long sum, final long max) {
+            this._buckets = buckets;
+            long count = 0;
+            for (long bucket : buckets) {
+                count += bucket;
+            }
+            this._count = count;
+            this._sum = sum;
+            this._max = max;
+        }
+        
+        public long getCount() {
+            return this._count;
+        }
+        
+        public long getSum() {
+            return this._sum;
+        }
+        
+        public long getMax() {
+            return this._max;
+        }
+        
+        public long getMean() {
+            return this._count > 0 ? this._sum / this._count : 0;
+        }
+        
+        /**
+         * @param percentile 0.0 ~ 1.0
+         * @return upper bound of bucket which contains the percentile (max of snapshot at most) 
+         */
+        public long getPercentile(final double percentile) {
+            if (0 == this._count) {
+                return 0;
+            }
+            final long rank = (long)Math.ceil(this._count * Math.min(1.0, Math.max(0.0, percentile)));
+            long seen = 0;
+            for (int idx = 0; idx < this._buckets.length; idx++) {
+                seen += this._buckets[idx];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(upperBoundOf(idx), this._max);
+                }
+            }
+            return this._max;
+        }
+        
+        public long[] getBuckets() {
+            return this._buckets.clone();
+        }
+        
+        @Override
+        public String toString() {
+            return "[count=" + this._count 
+                    + ", mean=" + this.getMean() 
+                    + "ns, p50=" + this.getPercentile(0.5) 
+                    + "ns, p99=" + this.getPercentile(0.99) 
+                    + "ns, max=" + this._max + "ns]";
+        }
+        
+        private static long upperBoundOf(final int idx) {
+            return idx >= 63 ? Long.MAX_VALUE : (1L << idx) - 1;
+        }
+        
+        private final long[] _buckets;
+        private final long _count;
+        private final long _sum;
+        private final long _max;
+    }
+    
+    public void record(final long nanos) {
+        final long value = Math.max(0, nanos);
+        this._buckets.getAndIncrement(64 - Long.numberOfLeadingZeros(value));
+        this._sum.getAndAdd(value);
+        long max;
+        while (value > (max = this._max.get())) {
+            if (this._max.compareAndSet(max, value)) {
+                break;
+            }
+        }
+    }
+    
+    public Snapshot snapshot() {
+        final long[] buckets = new long[BUCKETS];
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            buckets[idx] = this._buckets.get(idx);
+        }
+        return new Snapshot(buckets, this._sum.get(), this._max.get());
+    }
+    
+    public Snapshot snapshotAndReset() {
+        final long[] buckets = new long[BUCKETS];
+        for (int idx = 0; idx < BUCKETS; idx++) {
+            buckets[idx] = this._buckets.getAndSet(idx, 0);
+        }
+        return new Snapshot(buckets, this._sum.getAndSet(0), this._max.getAndSet(0));
+    }
+    
+    private static final int BUCKETS = 65;
+    
+    private final AtomicLongArray _buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong _sum = new AtomicLong(0);
+    private final AtomicLong _max = new AtomicLong(0);
+}
@@ -0,0 +1,86 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * unbounded FlowMailbox base on intrusive MPSC linked queue:
+ *  producer only swap tail, consumer only move head.
+ *
+ * @author isdom
+ *
+ */
+final class LinkedFlowMailbox extends FlowMailbox {
+
+    static final class Node extends Envelope {
+        volatile Node _next;
+    }
+
+    @Override
+    boolean enqueue(final Object eventable, final Object[] args, final long enqueueNanos) {
+        final Node node = new Node();
+        node.fill(eventable, args, enqueueNanos);
+        final Node prev = TAIL_UPDATER.getAndSet(this, node);
+        prev._next = node;
+        return true;
+    }
+
+    @Override
+    int enqueueAll(final Object[] eventables, final Object[][] args, final int count, 
+            final long enqueueNanos) {
+        if (count <= 0) {
+            return 0;
+        }
+        //  link private chain first, then publish whole chain by one swap
+        final Node first = new Node();
+        first.fill(eventables[0], args[0], enqueueNanos);
+        Node last = first;
+        for (int idx = 1; idx < count; idx++) {
+            final Node node = new Node();
+            node.fill(eventables[idx], args[idx], enqueueNanos);
+            last._next = node;
+            last = node;
+        }
+        final Node prev = TAIL_UPDATER.getAndSet(this, last);
+        prev._next = first;
+        return count;
+    }
+
+    @Override
+    Envelope pollNormal() {
+        final Node next = this._head._next;
+        if (null == next) {
+            return null;
+        }
+        //  next become new stub node, its payload will be cleared by release
+        this._head = next;
+        return next;
+    }
+
+    @Override
+    void releaseNormal(final Envelope envelope) {
+        envelope.clear();
+    }
+
+    @Override
+    boolean isEmptyNormal() {
+        return null == this._head._next;
+    }
+
+    @Override
+    void forEachNormal(final Visitor visitor) {
+        for (Node node = this._head._next; null != node; node = node._next) {
+            visitor.visit(node);
+        }
+    }
+
+    private static final AtomicReferenceFieldUpdater<LinkedFlowMailbox, Node> TAIL_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(LinkedFlowMailbox.class, Node.class, "_tail");
+
+    //  only accessed by the owner of ACTIVE (or holder of poll lock),
+    //  whose visibility is ensured by state word (or poll lock)
+    private Node _head = new Node();
+    private volatile Node _tail = this._head;
+}
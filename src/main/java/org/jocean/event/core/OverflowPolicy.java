@@ -0,0 +1,30 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+/**
+ * what to do when pending events of flow (or of whole container) exceed capacity
+ * 
+ * @author isdom
+ *
+ */
+public enum OverflowPolicy {
+    
+    /**
+     * reject new event: acceptEvent return false, and EventUnhandleAware of event is notified
+     */
+    REJECT,
+    
+    /**
+     * drop oldest pending event of flow (its EventUnhandleAware is notified) to make room for new event,
+     * reject new event if flow has no pending event to drop (only container capacity exceed)
+     */
+    DROP_OLDEST,
+    
+    /**
+     * caller of acceptEvent wait (at most block timeout) for room, then reject new event if still no room.
+     * caller running in flow's ExectionLoop never wait (which cause deadlock), just reject new event
+     */
+    BLOCK
+}
@@ -0,0 +1,131 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jocean.idiom.ExceptionUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * count pending events of one flow (and of its container) against capacity, 
+ *  and signal watermark crossing.
+ *  permit is acquired before event enqueued, and released when event polled from mailbox.
+ * 
+ * only created for flow with capacity or watermark, 
+ *  so unbounded flow pay nothing for counting.
+ * 
+ * @author isdom
+ *
+ */
+final class PendingLimiter {
+    
+    private static final Logger LOG = 
+            LoggerFactory.getLogger(PendingLimiter.class);
+    
+    /**
+     * @param capacity          max pending events of flow, 0 means unlimited
+     * @param sharedPending     pending events of all flows in container, null means unlimited
+     * @param sharedCapacity    max pending events of all flows in container
+     * @param highWatermark     0 means no watermark signal
+     */
+    PendingLimiter(
+            final FlowContext   ctx,
+            final int           capacity,
+            final OverflowPolicy policy,
+            final long          blockTimeoutMillis,
+            final AtomicLong    sharedPending,
+            final long          sharedCapacity,
+            final int           highWatermark,
+            final int           lowWatermark,
+            final BackpressureListener listener) {
+        this._ctx = ctx;
+        this._capacity = capacity;
+        this._policy = null != policy ? policy : OverflowPolicy.REJECT;
+        this._blockTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(blockTimeoutMillis);
+        this._sharedPending = sharedPending;
+        this._sharedCapacity = sharedCapacity;
+        this._highWatermark = highWatermark;
+        this._lowWatermark = Math.min(lowWatermark, highWatermark);
+        this._listener = listener;
+    }
+    
+    OverflowPolicy policy() {
+        return this._policy;
+    }
+    
+    long blockTimeoutNanos() {
+        return this._blockTimeoutNanos;
+    }
+    
+    int pendingCount() {
+        return this._depth.get();
+    }
+    
+    boolean isAboveHighWatermark() {
+        return 0 != this._aboveHigh;
+    }
+    
+    boolean tryAcquire() {
+        final int depth = this._depth.incrementAndGet();
+        if (this._capacity > 0 && depth > this._capacity) {
+            this._depth.decrementAndGet();
+            return false;
+        }
+        if (null != this._sharedPending 
+            && this._sharedPending.incrementAndGet() > this._sharedCapacity) {
+            this._sharedPending.decrementAndGet();
+            this._depth.decrementAndGet();
+            return false;
+        }
+        if (this._highWatermark > 0 && depth >= this._highWatermark 
+            && 0 == this._aboveHigh && ABOVE_UPDATER.compareAndSet(this, 0, 1)) {
+            try {
+                this._listener.onHighWatermark(this._ctx, depth);
+            }
+            catch (Exception e) {
+                LOG.warn("exception when notify {} onHighWatermark, detail: {}", 
+                        this._ctx, ExceptionUtils.exception2detail(e));
+            }
+        }
+        return true;
+    }
+    
+    void release() {
+        if (null != this._sharedPending) {
+            this._sharedPending.decrementAndGet();
+        }
+        final int depth = this._depth.decrementAndGet();
+        if (0 != this._aboveHigh && depth <= this._lowWatermark
+            && ABOVE_UPDATER.compareAndSet(this, 1, 0)) {
+            try {
+                this._listener.onLowWatermark(this._ctx, depth);
+            }
+            catch (Exception e) {
+                LOG.warn("exception when notify {} onLowWatermark, detail: {}", 
+                        this._ctx, ExceptionUtils.exception2detail(e));
+            }
+        }
+    }
+    
+    private static final AtomicIntegerFieldUpdater<PendingLimiter> ABOVE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(PendingLimiter.class, "_aboveHigh");
+    
+    private final FlowContext _ctx;
+    private final int _capacity;
+    private final OverflowPolicy _policy;
+    private final long _blockTimeoutNanos;
+    private final AtomicLong _sharedPending;
+    private final long _sharedCapacity;
+    private final int _highWatermark;
+    private final int _lowWatermark;
+    private final BackpressureListener _listener;
+    
+    private final AtomicInteger _depth = new AtomicInteger(0);
+    private volatile int _aboveHigh = 0;
+}
@@ -0,0 +1,145 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+import org.jocean.event.api.internal.EventHandler;
+import org.jocean.idiom.Pair;
+
+import rx.Observable;
+import rx.Subscriber;
+
+/**
+ * next handler which is not yet known, returned by EventHandler.process as Pair's first, 
+ *  eg: handler wait for I/O result to decide next handler.
+ *  flow is suspended (still buffer events but dispatch nothing) until pending completed,
+ *  then transition is applied in flow's exectionLoop, and flow continue dispatch pending events:
+ *      complete(next)  : same as process return next, null means end flow
+ *      fail(e)         : same as process throw e, flow will be end
+ *  args of suspended event is released (ArgsHandler.afterInvoke) after transition applied.
+ *  
+ *  flow suspended is destroyed clearly (suspended event and pending events released),
+ *      and suspended flow is treated as idle, so it's expired by FlowContainer's idleTimeout.
+ *      completion of pending after flow destroyed is ignored.
+ * 
+ * @author isdom
+ *
+ */
+public final class PendingTransition implements EventHandler {
+    
+    public static PendingTransition create() {
+        return new PendingTransition();
+    }
+    
+    /**
+     * @return PendingTransition completed by observable's first item, 
+     *  and failed by observable's error or completion without item
+     */
+    public static PendingTransition from(final Observable<? extends EventHandler> observable) {
+        final PendingTransition pending = new PendingTransition();
+        observable.subscribe(new Subscriber<EventHandler>() {
+            @Override
+            public void onCompleted() {
+                pending.fail(new NoSuchElementException("completed without next handler"));
+            }
+
+            @Override
+            public void onError(final Throwable e) {
+                pending.fail(e);
+            }
+
+            @Override
+            public void onNext(final EventHandler next) {
+                pending.complete(next);
+            }});
+        return pending;
+    }
+    
+    /**
+     * @return false if pending has been completed or failed
+     */
+    public boolean complete(final EventHandler next) {
+        return done(new Result(next, null));
+    }
+    
+    /**
+     * @return false if pending has been completed or failed
+     */
+    public boolean fail(final Throwable cause) {
+        return done(new Result(null, null != cause ? cause : new RuntimeException("unknown cause")));
+    }
+    
+    public boolean isDone() {
+        return null != this._result;
+    }
+    
+    @Override
+    public String getName() {
+        return "(pending)";
+    }
+
+    @Override
+    public Pair<EventHandler, Boolean> process(final String event, final Object[] args) throws Exception {
+        throw new UnsupportedOperationException("PendingTransition can't process event:" + event);
+    }
+
+    /**
+     * @return next handler when completed, MUST be invoked after done
+     */
+    EventHandler nextHandler() {
+        return this._result._next;
+    }
+    
+    /**
+     * @return cause when failed, null when completed, MUST be invoked after done
+     */
+    Throwable failure() {
+        return this._result._cause;
+    }
+    
+    /**
+     * @param listener invoked once (by completer) when done
+     * @return false means already done, listener will never be invoked
+     */
+    boolean setListener(final Runnable listener) {
+        this._listener = listener;
+        if (null != this._result && LISTENER_UPDATER.compareAndSet(this, listener, null)) {
+            //  done before listener set, and completer hasn't take listener 
+            return false;
+        }
+        return true;
+    }
+    
+    private boolean done(final Result result) {
+        if (!RESULT_UPDATER.compareAndSet(this, null, result)) {
+            return false;
+        }
+        final Runnable listener = LISTENER_UPDATER.getAndSet(this, null);
+        if (null != listener) {
+            listener.run();
+        }
+        return true;
+    }
+    
+    private static final class Result {
+        Result(final EventHandler next, final Throwable cause) {
+            this._next = next;
+            this._cause = cause;
+        }
+        
+        private final EventHandler _next;
+        private final Throwable _cause;
+    }
+    
+    private static final AtomicReferenceFieldUpdater<PendingTransition, Result> RESULT_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PendingTransition.class, Result.class, "_result");
+    
+    private static final AtomicReferenceFieldUpdater<PendingTransition, Runnable> LISTENER_UPDATER =
+            AtomicReferenceFieldUpdater.newUpdater(PendingTransition.class, Runnable.class, "_listener");
+    
+    private volatile Result _result = null;
+    private volatile Runnable _listener = null;
+}
@@ -0,0 +1,23 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.api.internal.Eventable;
+
+/**
+ * Eventable of control event (eg: cancel, timeout), 
+ *  pending in flow's priority lane and dispatched before all pending normal events,
+ *  order is kept among priority events.
+ *  
+ *  NOTE: priority event take no permit of flow's capacity, so never be rejected, blocked 
+ *  or dropped (DROP_OLDEST) by it, but counted against flow's priority capacity 
+ *  (see FlowContainer.setPriorityCapacity) and rejected when exceed it. 
+ *  priority event in batch (BatchEventReceiver) is pushed alone to priority lane, 
+ *  ahead of normal events pending before it.
+ * 
+ * @author isdom
+ *
+ */
+public interface PriorityEventable extends Eventable {
+}
@@ -0,0 +1,88 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import org.jocean.event.core.FlowContext.ReactorBuilder;
+
+/**
+ * how reactors of flow are composed: snapshot of container's ReactorBuilder set,
+ *  plus the ReactorShape last used, so flows created with same reactor classes
+ *  reuse shape without building ShapeKey or lookup shape cache.
+ *  plan is replaced (never mutated) when builder set changed.
+ *  
+ * @author isdom
+ *
+ */
+final class ReactorPlan {
+    
+    ReactorPlan(final ReactorBuilder[] builders, final ReactorShape.Cache shapes) {
+        this._builders = builders;
+        this._shapes = shapes;
+    }
+    
+    /**
+     * exception thrown by builder is propagated, so flow never start with reactor missing
+     * @return reactors + destroyHook + reactors built by each builder, in one exact sized array
+     */
+    Object[] compose(final Object[] reactors, final Object destroyHook, final FlowContext ctx) {
+        final ReactorBuilder[] builders = this._builders;
+        if (0 == builders.length) {
+            final Object[] composed = new Object[reactors.length + 1];
+            System.arraycopy(reactors, 0, composed, 0, reactors.length);
+            composed[reactors.length] = destroyHook;
+            return composed;
+        }
+        final Object[][] built = new Object[builders.length][];
+        int total = reactors.length + 1;
+        for (int idx = 0; idx < builders.length; idx++) {
+            built[idx] = builders[idx].buildReactors(ctx);
+            if (null != built[idx]) {
+                total += built[idx].length;
+            }
+        }
+        final Object[] composed = new Object[total];
+        System.arraycopy(reactors, 0, composed, 0, reactors.length);
+        int pos = reactors.length;
+        composed[pos++] = destroyHook;
+        for (Object[] ret : built) {
+            if (null != ret) {
+                System.arraycopy(ret, 0, composed, pos, ret.length);
+                pos += ret.length;
+            }
+        }
+        return composed;
+    }
+    
+    /**
+     * @return shape of composed reactors
+     */
+    ReactorShape shapeOf(final Object[] composed) {
+        final ReactorShape last = this._lastShape;
+        if (null != last && last.matches(composed)) {
+            return last;
+        }
+        final ReactorShape shape = this._shapes.of(composed);
+        this._lastShape = shape;
+        return shape;
+    }
+    
+    /**
+     * @return shape of reactors passed to EventEngine.create
+     */
+    ReactorShape shapeOfCreated(final Object[] reactors) {
+        final ReactorShape last = this._lastCreatedShape;
+        if (null != last && last.matches(reactors)) {
+            return last;
+        }
+        final ReactorShape shape = this._shapes.of(reactors);
+        this._lastCreatedShape = shape;
+        return shape;
+    }
+    
+    private final ReactorBuilder[] _builders;
+    //  shared by plans of same container
+    private final ReactorShape.Cache _shapes;
+    private volatile ReactorShape _lastShape = null;
+    private volatile ReactorShape _lastCreatedShape = null;
+}
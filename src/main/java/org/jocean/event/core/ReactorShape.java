@@ -0,0 +1,217 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.jocean.event.api.EndReasonAware;
+import org.jocean.event.api.FlowLifecycleListener;
+import org.jocean.event.api.FlowStateChangedListener;
+import org.jocean.event.api.internal.EndReasonProvider;
+import org.jocean.event.api.internal.EventHandlerAware;
+import org.jocean.event.api.internal.EventNameAware;
+import org.jocean.event.api.internal.ExectionLoopAware;
+
+/**
+ * which reactor (by position) implements which reactor interface,
+ *  resolved once for each sequence of reactor classes and cached by Cache (owned by FlowContainer),
+ *  then reactors of flow are bound into plain arrays of typed targets,
+ *  instead of reflective composite proxies.
+ *
+ * @author isdom
+ *
+ */
+final class ReactorShape {
+
+    static final EventNameAware[] NO_EVENTNAME_AWARE = new EventNameAware[0];
+    static final EventCodeAware[] NO_EVENTCODE_AWARE = new EventCodeAware[0];
+    static final EventHandlerAware[] NO_EVENTHANDLER_AWARE = new EventHandlerAware[0];
+    static final EndReasonProvider[] NO_ENDREASON_PROVIDER = new EndReasonProvider[0];
+    static final EndReasonAware[] NO_ENDREASON_AWARE = new EndReasonAware[0];
+    static final ExectionLoopAware[] NO_EXECTIONLOOP_AWARE = new ExectionLoopAware[0];
+    static final ExectionLoopSwitcherAware[] NO_SWITCHER_AWARE = new ExectionLoopSwitcherAware[0];
+    static final EventSchedulerAware[] NO_SCHEDULER_AWARE = new EventSchedulerAware[0];
+    static final FlowLifecycleListener[] NO_LIFECYCLE_LISTENER = new FlowLifecycleListener[0];
+    @SuppressWarnings("rawtypes")
+    static final FlowStateChangedListener[] NO_STATECHANGED_LISTENER = new FlowStateChangedListener[0];
+
+    /**
+     * @return shape resolved without cache
+     */
+    static ReactorShape of(final Object[] reactors) {
+        return new ReactorShape(classesOf(reactors));
+    }
+
+    /**
+     * shapes cached by one FlowContainer, so reactor classes (and their ClassLoader) 
+     *  are referenced no longer than the container, 
+     *  and at most MAX_CACHED shapes are cached, the others are resolved each time.
+     */
+    static final class Cache {
+
+        static final int MAX_CACHED = 1024;
+
+        ReactorShape of(final Object[] reactors) {
+            final Class<?>[] classes = classesOf(reactors);
+            final ShapeKey key = new ShapeKey(classes);
+            final ReactorShape shape = this._shapes.get(key);
+            if (null != shape) {
+                return shape;
+            }
+            final ReactorShape newShape = new ReactorShape(classes);
+            if (this._shapes.size() >= MAX_CACHED) {
+                return newShape;
+            }
+            final ReactorShape exist = this._shapes.putIfAbsent(key, newShape);
+            return null != exist ? exist : newShape;
+        }
+
+        private final ConcurrentMap<ShapeKey, ReactorShape> _shapes =
+                new ConcurrentHashMap<ShapeKey, ReactorShape>();
+    }
+
+    private static Class<?>[] classesOf(final Object[] reactors) {
+        final Class<?>[] classes = new Class<?>[reactors.length];
+        for (int idx = 0; idx < reactors.length; idx++) {
+            classes[idx] = null != reactors[idx] ? reactors[idx].getClass() : null;
+        }
+        return classes;
+    }
+
+    private ReactorShape(final Class<?>[] classes) {
+        this._classes = classes;
+        this._eventNameAware = indexesOf(EventNameAware.class, classes);
+        this._eventCodeAware = indexesOf(EventCodeAware.class, classes);
+        this._eventHandlerAware = indexesOf(EventHandlerAware.class, classes);
+        this._endReasonProvider = indexesOf(EndReasonProvider.class, classes);
+        this._endReasonAware = indexesOf(EndReasonAware.class, classes);
+        this._exectionLoopAware = indexesOf(ExectionLoopAware.class, classes);
+        this._exectionLoopSwitcherAware = indexesOf(ExectionLoopSwitcherAware.class, classes);
+        this._eventSchedulerAware = indexesOf(EventSchedulerAware.class, classes);
+        this._flowLifecycleListener = indexesOf(FlowLifecycleListener.class, classes);
+        this._flowStateChangedListener = indexesOf(FlowStateChangedListener.class, classes);
+    }
+
+    /**
+     * @return true if reactors has same classes (by position) as this shape, allocate nothing
+     */
+    boolean matches(final Object[] reactors) {
+        if (reactors.length != this._classes.length) {
+            return false;
+        }
+        for (int idx = 0; idx < reactors.length; idx++) {
+            final Class<?> cls = null != reactors[idx] ? reactors[idx].getClass() : null;
+            if (cls != this._classes[idx]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    EventNameAware[] eventNameAwares(final Object[] reactors) {
+        return select(this._eventNameAware, reactors, NO_EVENTNAME_AWARE);
+    }
+
+    EventCodeAware[] eventCodeAwares(final Object[] reactors) {
+        return select(this._eventCodeAware, reactors, NO_EVENTCODE_AWARE);
+    }
+
+    EventHandlerAware[] eventHandlerAwares(final Object[] reactors) {
+        return select(this._eventHandlerAware, reactors, NO_EVENTHANDLER_AWARE);
+    }
+
+    EndReasonProvider[] endReasonProviders(final Object[] reactors) {
+        return select(this._endReasonProvider, reactors, NO_ENDREASON_PROVIDER);
+    }
+
+    EndReasonAware[] endReasonAwares(final Object[] reactors) {
+        return select(this._endReasonAware, reactors, NO_ENDREASON_AWARE);
+    }
+
+    ExectionLoopAware[] exectionLoopAwares(final Object[] reactors) {
+        return select(this._exectionLoopAware, reactors, NO_EXECTIONLOOP_AWARE);
+    }
+
+    ExectionLoopSwitcherAware[] exectionLoopSwitcherAwares(final Object[] reactors) {
+        return select(this._exectionLoopSwitcherAware, reactors, NO_SWITCHER_AWARE);
+    }
+
+    EventSchedulerAware[] eventSchedulerAwares(final Object[] reactors) {
+        return select(this._eventSchedulerAware, reactors, NO_SCHEDULER_AWARE);
+    }
+
+    FlowLifecycleListener[] flowLifecycleListeners(final Object[] reactors) {
+        return select(this._flowLifecycleListener, reactors, NO_LIFECYCLE_LISTENER);
+    }
+
+    @SuppressWarnings("rawtypes")
+    FlowStateChangedListener[] flowStateChangedListeners(final Object[] reactors) {
+        return select(this._flowStateChangedListener, reactors, NO_STATECHANGED_LISTENER);
+    }
+
+    private static int[] indexesOf(final Class<?> type, final Class<?>[] classes) {
+        int count = 0;
+        final int[] indexes = new int[classes.length];
+        for (int idx = 0; idx < classes.length; idx++) {
+            if (null != classes[idx] && type.isAssignableFrom(classes[idx])) {
+                indexes[count++] = idx;
+            }
+        }
+        return Arrays.copyOf(indexes, count);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T[] select(final int[] indexes, final Object[] reactors, final T[] empty) {
+        if (0 == indexes.length) {
+            return empty;
+        }
+        final T[] targets = Arrays.copyOf(empty, indexes.length);
+        for (int idx = 0; idx < indexes.length; idx++) {
+            targets[idx] = (T)reactors[indexes[idx]];
+        }
+        return targets;
+    }
+
+    private static final class ShapeKey {
+
+        ShapeKey(final Class<?>[] classes) {
+            this._classes = classes;
+            this._hash = Arrays.hashCode(classes);
+        }
+
+        @Override
+        public int hashCode() {
+            return this._hash;
+        }
+
+        @Override
+        public boolean equals(final Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof ShapeKey)) {
+                return false;
+            }
+            final ShapeKey other = (ShapeKey) obj;
+            return this._hash == other._hash && Arrays.equals(this._classes, other._classes);
+        }
+
+        private final Class<?>[] _classes;
+        private final int _hash;
+    }
+
+    private final Class<?>[] _classes;
+    private final int[] _eventNameAware;
+    private final int[] _eventCodeAware;
+    private final int[] _eventHandlerAware;
+    private final int[] _endReasonProvider;
+    private final int[] _endReasonAware;
+    private final int[] _exectionLoopAware;
+    private final int[] _exectionLoopSwitcherAware;
+    private final int[] _eventSchedulerAware;
+    private final int[] _flowLifecycleListener;
+    private final int[] _flowStateChangedListener;
+}
@@ -0,0 +1,143 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * bounded FlowMailbox base on ring of preallocated & reusable envelopes,
+ * each slot carry a sequence to order producers and the consumer:
+ *  sequence == pos                 : slot is free for producer of pos
+ *  sequence == pos + 1             : slot is published for consumer
+ *  sequence == pos + capacity      : slot is recycled (release) for next round
+ *
+ * enqueue & poll & release allocate nothing.
+ *
+ * @author isdom
+ *
+ */
+final class RingFlowMailbox extends FlowMailbox {
+
+    static final class Slot extends Envelope {
+        volatile long _sequence;
+    }
+
+    RingFlowMailbox(final int size) {
+        int capacity = 1;
+        while (capacity < size) {
+            capacity <<= 1;
+        }
+        this._mask = capacity - 1;
+        this._slots = new Slot[capacity];
+        for (int idx = 0; idx < capacity; idx++) {
+            this._slots[idx] = new Slot();
+            this._slots[idx]._sequence = idx;
+        }
+    }
+
+    int capacity() {
+        return this._slots.length;
+    }
+
+    @Override
+    boolean enqueue(final Object eventable, final Object[] args, final long enqueueNanos) {
+        for (;;) {
+            final long tail = this._tail;
+            final Slot slot = this._slots[(int)tail & this._mask];
+            final long sequence = slot._sequence;
+            if (sequence == tail) {
+                if (TAIL_UPDATER.compareAndSet(this, tail, tail + 1)) {
+                    slot.fill(eventable, args, enqueueNanos);
+                    SEQUENCE_UPDATER.lazySet(slot, tail + 1);
+                    return true;
+                }
+            }
+            else if (sequence < tail) {
+                //  slot still used by previous round: ring is full
+                return false;
+            }
+            //  else other producer has claimed this pos, retry
+        }
+    }
+
+    @Override
+    int enqueueAll(final Object[] eventables, final Object[][] args, final int count, 
+            final long enqueueNanos) {
+        for (;;) {
+            final long tail = this._tail;
+            //  slots may be released out of order (oldest event dropped by producer),
+            //  so claim the free prefix of range slot by slot
+            final int max = Math.min(count, this._slots.length);
+            int claimed = 0;
+            while (claimed < max 
+                && this._slots[(int)(tail + claimed) & this._mask]._sequence == tail + claimed) {
+                claimed++;
+            }
+            if (0 == claimed) {
+                if (this._slots[(int)tail & this._mask]._sequence < tail) {
+                    //  ring is full
+                    return 0;
+                }
+                //  else other producer has claimed tail, retry
+                continue;
+            }
+            if (TAIL_UPDATER.compareAndSet(this, tail, tail + claimed)) {
+                for (int idx = 0; idx < claimed; idx++) {
+                    final Slot slot = this._slots[(int)(tail + idx) & this._mask];
+                    slot.fill(eventables[idx], args[idx], enqueueNanos);
+                    SEQUENCE_UPDATER.lazySet(slot, tail + idx + 1);
+                }
+                return claimed;
+            }
+        }
+    }
+
+    @Override
+    Envelope pollNormal() {
+        final Slot slot = this._slots[(int)this._head & this._mask];
+        if (slot._sequence != this._head + 1) {
+            return null;
+        }
+        this._head++;
+        return slot;
+    }
+
+    @Override
+    void releaseNormal(final Envelope envelope) {
+        final Slot slot = (Slot)envelope;
+        slot.clear();
+        SEQUENCE_UPDATER.lazySet(slot, slot._sequence - 1 + this._slots.length);
+    }
+
+    @Override
+    boolean isEmptyNormal() {
+        return this._slots[(int)this._head & this._mask]._sequence != this._head + 1;
+    }
+
+    @Override
+    void forEachNormal(final Visitor visitor) {
+        for (long pos = this._head; ; pos++) {
+            final Slot slot = this._slots[(int)pos & this._mask];
+            if (slot._sequence != pos + 1) {
+                return;
+            }
+            visitor.visit(slot);
+        }
+    }
+
+    private static final AtomicLongFieldUpdater<RingFlowMailbox> TAIL_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(RingFlowMailbox.class, "_tail");
+
+    private static final AtomicLongFieldUpdater<Slot> SEQUENCE_UPDATER =
+            AtomicLongFieldUpdater.newUpdater(Slot.class, "_sequence");
+
+    private final Slot[] _slots;
+    private final int _mask;
+
+    private volatile long _tail = 0;
+
+    //  only accessed by the owner of ACTIVE (or holder of poll lock),
+    //  whose visibility is ensured by state word (or poll lock)
+    private long _head = 0;
+}
@@ -0,0 +1,73 @@
+/**
+ * 
+ */
+package org.jocean.event.core;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * counter spread to padded cells selected by current thread, 
+ *  so threads of different loops rarely contend on same cache line.
+ *  sum is not atomic snapshot, it may be stale under concurrent update.
+ * 
+ * @author isdom
+ *
+ */
+final class StripedCounter {
+    
+    StripedCounter() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+    
+    StripedCounter(final int concurrency) {
+        int cells = 1;
+        while (cells < concurrency) {
+            cells <<= 1;
+        }
+        this._cellMask = cells - 1;
+        this._cells = new AtomicLongArray(cells * PADDING);
+    }
+    
+    void increment() {
+        add(1L);
+    }
+    
+    void decrement() {
+        add(-1L);
+    }
+    
+    void add(final long delta) {
+        this._cells.getAndAdd(cellOf(Thread.currentThread().getId()), delta);
+    }
+    
+    /**
+     * take each cell atomically, so no add is lost or counted twice across resets
+     */
+    long sumThenReset() {
+        long sum = 0;
+        for (int idx = 0; idx < this._cells.length(); idx += PADDING) {
+            sum += this._cells.getAndSet(idx, 0);
+        }
+        return sum;
+    }
+    
+    long sum() {
+        long sum = 0;
+        for (int idx = 0; idx < this._cells.length(); idx += PADDING) {
+            sum += this._cells.get(idx);
+        }
+        return sum;
+    }
+    
+    private int cellOf(final long threadId) {
+        //  spread sequential thread ids
+        final long h = threadId * 0x9e3779b97f4a7c15L;
+        return ((int)(h >>> 32) & this._cellMask) * PADDING;
+    }
+    
+    //  8 longs == 64 bytes, one cache line per cell
+    private static final int PADDING = 8;
+    
+    private final AtomicLongArray _cells;
+    private final int _cellMask;
+}
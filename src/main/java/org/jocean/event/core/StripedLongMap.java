@@ -0,0 +1,291 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * concurrent map keyed by primitive long, without boxing:
+ *  keys are spread to stripes, each stripe is an open addressing (linear probing) table
+ *  guarded by its own monitor, so writers of different stripes never contend.
+ *  get is lock-free (validated by stripe's write stamp), and only lock when racing with writer.
+ *
+ * iterator is weakly consistent: it snapshots one stripe at a time,
+ *  never throw ConcurrentModificationException, and never block writers of other stripes.
+ *
+ * @author isdom
+ *
+ */
+final class StripedLongMap<V> implements Iterable<V> {
+
+    StripedLongMap() {
+        this(Runtime.getRuntime().availableProcessors() * 4);
+    }
+
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    StripedLongMap(final int concurrency) {
+        int stripes = 1;
+        while (stripes < concurrency) {
+            stripes <<= 1;
+        }
+        this._stripes = new Stripe[stripes];
+        for (int idx = 0; idx < stripes; idx++) {
+            this._stripes[idx] = new Stripe<V>();
+        }
+        this._stripeMask = stripes - 1;
+    }
+
+    V get(final long key) {
+        final long hash = hash(key);
+        return stripeOf(hash).get(key, hash);
+    }
+
+    V put(final long key, final V value) {
+        final long hash = hash(key);
+        return stripeOf(hash).put(key, hash, value, false);
+    }
+
+    V putIfAbsent(final long key, final V value) {
+        final long hash = hash(key);
+        return stripeOf(hash).put(key, hash, value, true);
+    }
+
+    V remove(final long key) {
+        final long hash = hash(key);
+        return stripeOf(hash).remove(key, hash, null);
+    }
+
+    boolean remove(final long key, final V value) {
+        final long hash = hash(key);
+        return null != stripeOf(hash).remove(key, hash, value);
+    }
+
+    int size() {
+        int size = 0;
+        for (Stripe<V> stripe : this._stripes) {
+            size += stripe._size;
+        }
+        return size;
+    }
+
+    @Override
+    public Iterator<V> iterator() {
+        return new Iterator<V>() {
+            @Override
+            public boolean hasNext() {
+                while (this._idx >= this._snapshot.length) {
+                    if (this._stripeIdx >= _stripes.length) {
+                        return false;
+                    }
+                    this._snapshot = _stripes[this._stripeIdx++].values();
+                    this._idx = 0;
+                }
+                return true;
+            }
+
+            @Override
+            public V next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return this._snapshot[this._idx++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+
+            private int _stripeIdx = 0;
+            private V[] _snapshot = emptyValues();
+            private int _idx = 0;
+        };
+    }
+
+    //  high bits select stripe, low bits select slot in stripe
+    private Stripe<V> stripeOf(final long hash) {
+        return this._stripes[(int)(hash >>> 32) & this._stripeMask];
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V> V[] emptyValues() {
+        return (V[])EMPTY_VALUES;
+    }
+
+    //  murmur3 fmix64
+    private static long hash(final long key) {
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stripe<V> {
+
+        /**
+         * optimistic read without lock: valid if no writer modified stripe during read,
+         *  else read again under stripe's lock
+         */
+        V get(final long key, final long hash) {
+            final int stamp = this._stamp;
+            if (0 == (stamp & 1)) {
+                final V value = find(this._table, key, hash);
+                if (stamp == this._stamp) {
+                    return value;
+                }
+            }
+            synchronized (this) {
+                return find(this._table, key, hash);
+            }
+        }
+
+        synchronized V put(final long key, final long hash, final V value, final boolean onlyIfAbsent) {
+            final Table<V> table = this._table;
+            final int mask = table._mask;
+            int idx = (int)hash & mask;
+            for (V exist; null != (exist = table._values.get(idx)); idx = (idx + 1) & mask) {
+                if (table._keys.get(idx) == key) {
+                    if (!onlyIfAbsent) {
+                        beginWrite();
+                        table._values.set(idx, value);
+                        endWrite();
+                    }
+                    return exist;
+                }
+            }
+            beginWrite();
+            table._keys.set(idx, key);
+            table._values.set(idx, value);
+            if (++this._size > (table._keys.length() >> 1)) {
+                rehash(table._keys.length() << 1);
+            }
+            endWrite();
+            return null;
+        }
+
+        synchronized V remove(final long key, final long hash, final V expected) {
+            final Table<V> table = this._table;
+            final int mask = table._mask;
+            for (int idx = (int)hash & mask; null != table._values.get(idx); idx = (idx + 1) & mask) {
+                if (table._keys.get(idx) == key) {
+                    final V prev = table._values.get(idx);
+                    if (null != expected && expected != prev) {
+                        return null;
+                    }
+                    beginWrite();
+                    table._values.set(idx, null);
+                    this._size--;
+                    shiftBack(table, idx);
+                    endWrite();
+                    return prev;
+                }
+            }
+            return null;
+        }
+
+        synchronized V[] values() {
+            final Table<V> table = this._table;
+            @SuppressWarnings("unchecked")
+            final V[] snapshot = (V[])new Object[this._size];
+            int pos = 0;
+            for (int idx = 0; idx < table._values.length(); idx++) {
+                final V value = table._values.get(idx);
+                if (null != value) {
+                    snapshot[pos++] = value;
+                }
+            }
+            return snapshot;
+        }
+
+        //  probe at most whole table, table modified concurrently may have no empty slot in probe
+        private static <V> V find(final Table<V> table, final long key, final long hash) {
+            final int mask = table._mask;
+            int idx = (int)hash & mask;
+            for (int probed = 0; probed <= mask; probed++, idx = (idx + 1) & mask) {
+                final V value = table._values.get(idx);
+                if (null == value) {
+                    return null;
+                }
+                if (table._keys.get(idx) == key) {
+                    return value;
+                }
+            }
+            return null;
+        }
+
+        //  odd stamp means writing
+        private void beginWrite() {
+            this._stamp++;
+        }
+
+        private void endWrite() {
+            this._stamp++;
+        }
+
+        //  backward shift deletion for linear probing, no tombstone needed
+        private static <V> void shiftBack(final Table<V> table, final int removed) {
+            final int mask = table._mask;
+            int gap = removed;
+            for (int idx = (gap + 1) & mask; null != table._values.get(idx); idx = (idx + 1) & mask) {
+                final int home = (int)hash(table._keys.get(idx)) & mask;
+                //  move entry at idx to gap if its home is not in (gap, idx]
+                if (((idx - home) & mask) >= ((idx - gap) & mask)) {
+                    table._keys.set(gap, table._keys.get(idx));
+                    table._values.set(gap, table._values.get(idx));
+                    table._values.set(idx, null);
+                    gap = idx;
+                }
+            }
+        }
+
+        private void rehash(final int capacity) {
+            final Table<V> old = this._table;
+            final Table<V> table = new Table<V>(capacity);
+            final int mask = table._mask;
+            for (int pos = 0; pos < old._values.length(); pos++) {
+                final V value = old._values.get(pos);
+                if (null != value) {
+                    int idx = (int)hash(old._keys.get(pos)) & mask;
+                    while (null != table._values.get(idx)) {
+                        idx = (idx + 1) & mask;
+                    }
+                    table._keys.set(idx, old._keys.get(pos));
+                    table._values.set(idx, value);
+                }
+            }
+            this._table = table;
+        }
+
+        private volatile Table<V> _table = new Table<V>(INIT_CAPACITY);
+        private volatile int _size = 0;
+        private volatile int _stamp = 0;
+    }
+
+    //  slots are read by lock-free get, so accessed with volatile semantics
+    private static final class Table<V> {
+
+        Table(final int capacity) {
+            this._keys = new AtomicLongArray(capacity);
+            this._values = new AtomicReferenceArray<V>(capacity);
+            this._mask = capacity - 1;
+        }
+
+        private final AtomicLongArray _keys;
+        private final AtomicReferenceArray<V> _values;
+        private final int _mask;
+    }
+
+    private static final int INIT_CAPACITY = 16;
+    private static final Object[] EMPTY_VALUES = new Object[0];
+
+    private final Stripe<V>[] _stripes;
+    private final int _stripeMask;
+
+}
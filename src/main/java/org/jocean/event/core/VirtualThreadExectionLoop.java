@@ -0,0 +1,180 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jocean.idiom.Detachable;
+import org.jocean.idiom.ExceptionUtils;
+import org.jocean.idiom.ExectionLoop;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * ExectionLoop which run each submitted task (eg: flow's dispatch) on its own virtual thread,
+ *  so handler can make blocking call without pin a platform thread.
+ *  serial execution of one flow is still ensured by flow's mailbox (only the owner of ACTIVE dispatch).
+ *
+ * virtual thread is resolved by reflection (Thread.ofVirtual(), JDK 21+),
+ *  when running on older JDK, fallback to bounded pool of daemon platform threads
+ *  (at most fallbackThreads, tasks queued when all of them blocking), 
+ *  so lots of blocked flows can't exhaust memory by platform threads.
+ *
+ * @author isdom
+ *
+ */
+public class VirtualThreadExectionLoop implements ExectionLoop {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(VirtualThreadExectionLoop.class);
+
+    public VirtualThreadExectionLoop(final String name) {
+        this(name, DEFAULT_FALLBACK_THREADS);
+    }
+
+    /**
+     * @param fallbackThreads max platform threads used when virtual thread not supported
+     */
+    public VirtualThreadExectionLoop(final String name, final int fallbackThreads) {
+        this._name = null != name ? name : super.toString();
+        final ThreadFactory virtualFactory = virtualThreadFactory(this._name);
+        this._isVirtual = null != virtualFactory;
+        this._threadFactory = this._isVirtual ? virtualFactory : platformThreadFactory(this._name);
+        if (this._isVirtual) {
+            this._fallbackExecutor = null;
+        }
+        else {
+            final int threads = Math.max(1, fallbackThreads);
+            final ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads,
+                    60L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(), this._threadFactory);
+            //  idle platform threads exit, as cached pool
+            executor.allowCoreThreadTimeOut(true);
+            this._fallbackExecutor = executor;
+            LOG.warn("virtual thread not supported by current JVM, loop {} fallback to at most {} platform threads",
+                    this._name, threads);
+        }
+    }
+
+    public boolean isVirtual() {
+        return this._isVirtual;
+    }
+
+    @Override
+    public boolean inExectionLoop() {
+        return CURRENT_LOOP.get() == this;
+    }
+
+    @Override
+    public Detachable submit(final Runnable runnable) {
+        final Task task = new Task(runnable);
+        if (this._isVirtual) {
+            this._threadFactory.newThread(task).start();
+        }
+        else {
+            this._fallbackExecutor.execute(task);
+        }
+        return task;
+    }
+
+    @Override
+    public Detachable schedule(final Runnable runnable, final long delayMillis) {
+        final Task task = new Task(runnable);
+        final ScheduledFuture<?> future = TIMER.schedule(new Runnable() {
+            @Override
+            public void run() {
+                submit(task);
+            }}, delayMillis, TimeUnit.MILLISECONDS);
+        return new Detachable() {
+            @Override
+            public void detach() {
+                task.detach();
+                future.cancel(false);
+            }};
+    }
+
+    @Override
+    public String toString() {
+        return "VirtualThreadExectionLoop [" + this._name + ", virtual=" + this._isVirtual + "]";
+    }
+
+    private final class Task implements Runnable, Detachable {
+
+        Task(final Runnable runnable) {
+            this._runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            if (this._detached) {
+                return;
+            }
+            final ExectionLoop prev = CURRENT_LOOP.get();
+            CURRENT_LOOP.set(VirtualThreadExectionLoop.this);
+            try {
+                this._runnable.run();
+            }
+            catch (Throwable e) {
+                LOG.warn("exception when loop {} run task {}, detail: {}",
+                        _name, this._runnable, ExceptionUtils.exception2detail(e));
+            }
+            finally {
+                CURRENT_LOOP.set(prev);
+            }
+        }
+
+        @Override
+        public void detach() {
+            this._detached = true;
+        }
+
+        private final Runnable _runnable;
+        private volatile boolean _detached = false;
+    }
+
+    private static ThreadFactory virtualThreadFactory(final String name) {
+        try {
+            final Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            final Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            final Method nameMethod = builderClass.getMethod("name", String.class, long.class);
+            return (ThreadFactory)builderClass.getMethod("factory")
+                    .invoke(nameMethod.invoke(builder, name + "-", 0L));
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static ThreadFactory platformThreadFactory(final String name) {
+        final AtomicInteger counter = new AtomicInteger(0);
+        return new ThreadFactory() {
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                final Thread thread = new Thread(runnable, name + "-" + counter.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            }};
+    }
+
+    private static final int DEFAULT_FALLBACK_THREADS =
+            Math.max(16, Runtime.getRuntime().availableProcessors() * 8);
+
+    private static final ThreadLocal<ExectionLoop> CURRENT_LOOP = new ThreadLocal<ExectionLoop>();
+
+    private static final ScheduledExecutorService TIMER =
+            Executors.newSingleThreadScheduledExecutor(platformThreadFactory("virtual-loop-timer"));
+
+    private final String _name;
+    private final boolean _isVirtual;
+    private final ThreadFactory _threadFactory;
+    private final ExecutorService _fallbackExecutor;
+}
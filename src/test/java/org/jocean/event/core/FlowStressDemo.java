@@ -0,0 +1,348 @@
+/**
+ *
+ */
+package org.jocean.event.core;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.jocean.event.api.EventEngine;
+import org.jocean.event.api.EventReceiver;
+import org.jocean.event.api.internal.EventHandler;
+import org.jocean.event.api.internal.Eventable;
+import org.jocean.event.core.FlowMailbox.Envelope;
+import org.jocean.idiom.ArgsHandler;
+import org.jocean.idiom.Detachable;
+import org.jocean.idiom.ExectionLoop;
+import org.jocean.idiom.Pair;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * runnable stress checks of concurrent paths of flow, print OK/FAIL of each check,
+ *  and exit with 1 if any failed:
+ *
+ *  closeVsOffer:           producers offer to mailbox (linked & ring) while it closed,
+ *                          every event enqueued is drained after close, and no offer accepted after close
+ *  ringWrapDropOldest:     ring mailbox wrap many times under OverflowPolicy.DROP_OLDEST with handler blocked,
+ *                          only newest events are dispatched in order, args of dropped ones are postprocessed
+ *  destroyDuringSuspend:   flows destroyed while suspended by PendingTransition (racing with complete),
+ *                          pending events are cleared and no flow left
+ *
+ * @author isdom
+ *
+ */
+public class FlowStressDemo {
+
+    private static final Logger LOG =
+            LoggerFactory.getLogger(FlowStressDemo.class);
+
+    /**
+     * count preprocess & postprocess of its args, they MUST be balanced when flow is gone
+     */
+    static class CountedEvent implements Eventable, ArgsHandler {
+
+        CountedEvent(final String event, final AtomicInteger pre, final AtomicInteger post) {
+            this._event = event;
+            this._pre = pre;
+            this._post = post;
+        }
+
+        @Override
+        public String event() {
+            return this._event;
+        }
+
+        @Override
+        public Object[] beforeInvoke(final Object[] args) throws Exception {
+            this._pre.incrementAndGet();
+            return args;
+        }
+
+        @Override
+        public void afterInvoke(final Object[] args) throws Exception {
+            this._post.incrementAndGet();
+        }
+
+        private final String _event;
+        private final AtomicInteger _pre;
+        private final AtomicInteger _post;
+    }
+
+    public static void main(final String[] args) throws Exception {
+        final FlowStressDemo demo = new FlowStressDemo();
+        try {
+            demo.closeVsOffer(new LinkedFlowMailbox(), "linked");
+            demo.closeVsOffer(new RingFlowMailbox(1024), "ring");
+            demo.ringWrapDropOldest();
+            demo.destroyDuringSuspend();
+        }
+        finally {
+            demo._executor.shutdownNow();
+            demo._timer.shutdownNow();
+        }
+        System.exit(demo._failed ? 1 : 0);
+    }
+
+    private void closeVsOffer(final FlowMailbox mailbox, final String kind) throws Exception {
+        final int generation = mailbox.generation();
+        final AtomicBoolean closed = new AtomicBoolean(false);
+        final AtomicInteger enqueued = new AtomicInteger(0);
+        final AtomicInteger lateAccepted = new AtomicInteger(0);
+        final CountDownLatch started = new CountDownLatch(PRODUCERS);
+        final List<Thread> producers = new ArrayList<Thread>();
+        for (int idx = 0; idx < PRODUCERS; idx++) {
+            final Thread producer = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    for (;;) {
+                        final boolean afterClose = closed.get();
+                        final int result = mailbox.offer(EVENT, null, 0L, generation);
+                        if (FlowMailbox.OFFER_ENQUEUED == result
+                            || FlowMailbox.OFFER_ACTIVATED == result) {
+                            enqueued.incrementAndGet();
+                            if (afterClose) {
+                                lateAccepted.incrementAndGet();
+                            }
+                        }
+                        else if (FlowMailbox.OFFER_REJECTED == result) {
+                            return;
+                        }
+                        //  OFFER_FULL: ring is full, nobody drain before close, just retry
+                    }
+                }});
+            producer.start();
+            producers.add(producer);
+        }
+        started.await();
+        Thread.sleep(20L);
+
+        mailbox.close();
+        closed.set(true);
+        //  act as the owner which drain mailbox after flow destroyed
+        final int drained = drain(mailbox);
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        final int drainedAfterJoin = drain(mailbox);
+
+        check("closeVsOffer(" + kind + ")",
+                drained == enqueued.get() && 0 == drainedAfterJoin && 0 == lateAccepted.get(),
+                "enqueued=" + enqueued.get() + ", drained after close=" + drained
+                + ", drained after join=" + drainedAfterJoin + ", accepted after close=" + lateAccepted.get());
+    }
+
+    private static int drain(final FlowMailbox mailbox) {
+        int drained = 0;
+        Envelope envelope;
+        while (null != (envelope = mailbox.poll())) {
+            mailbox.release(envelope);
+            drained++;
+        }
+        return drained;
+    }
+
+    private void ringWrapDropOldest() throws Exception {
+        final int ringSize = 8;
+        final int count = 100000;
+        final AtomicInteger pre = new AtomicInteger(0);
+        final AtomicInteger post = new AtomicInteger(0);
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch blocking = new CountDownLatch(1);
+        final List<Integer> handled = new ArrayList<Integer>();
+        final EventHandler handler = new EventHandler() {
+            @Override
+            public String getName() {
+                return "RECORD";
+            }
+
+            @Override
+            public Pair<EventHandler, Boolean> process(final String event, final Object[] args)
+                    throws Exception {
+                if ("block".equals(event)) {
+                    blocking.countDown();
+                    gate.await();
+                }
+                else if ("end".equals(event)) {
+                    return Pair.<EventHandler, Boolean>of(null, true);
+                }
+                else {
+                    synchronized (handled) {
+                        handled.add((Integer)args[0]);
+                    }
+                }
+                return Pair.<EventHandler, Boolean>of(this, true);
+            }};
+
+        final FlowContainer container = new FlowContainer("ring");
+        container.setMailboxRingSize(ringSize);
+        container.setMailboxCapacity(ringSize);
+        container.setOverflowPolicy(OverflowPolicy.DROP_OLDEST, 0);
+        final EventReceiver receiver = container.buildEventEngine(this._loop).create("ring", handler);
+        receiver.acceptEvent("block");
+        blocking.await();
+
+        int accepted = 0;
+        for (int idx = 0; idx < count; idx++) {
+            if (receiver.acceptEvent(new CountedEvent("data", pre, post), idx)) {
+                accepted++;
+            }
+        }
+        gate.countDown();
+        //  end flow after pending events dispatched, or "end" will drop oldest of them
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (((BackpressureSource)receiver).getPendingEventCount() > 0
+            && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        receiver.acceptEvent("end");
+        waitForNoFlow(container);
+
+        boolean inOrder = true;
+        synchronized (handled) {
+            for (int idx = 0; idx < handled.size(); idx++) {
+                if (handled.get(idx) != count - handled.size() + idx) {
+                    inOrder = false;
+                }
+            }
+        }
+        check("ringWrapDropOldest",
+                count == accepted && ringSize == handled.size() && inOrder && pre.get() == post.get(),
+                "accepted=" + accepted + ", handled=" + handled + ", pre=" + pre.get() + ", post=" + post.get());
+    }
+
+    private void destroyDuringSuspend() throws Exception {
+        final int flows = 1000;
+        final int eventsPerFlow = 5;
+        final AtomicInteger pre = new AtomicInteger(0);
+        final AtomicInteger post = new AtomicInteger(0);
+        final List<PendingTransition> pendings = new ArrayList<PendingTransition>();
+        final CountDownLatch suspended = new CountDownLatch(flows);
+        final EventHandler handler = new EventHandler() {
+            @Override
+            public String getName() {
+                return "SUSPEND";
+            }
+
+            @Override
+            public Pair<EventHandler, Boolean> process(final String event, final Object[] args)
+                    throws Exception {
+                if ("io".equals(event)) {
+                    final PendingTransition pending = PendingTransition.create();
+                    synchronized (pendings) {
+                        pendings.add(pending);
+                    }
+                    suspended.countDown();
+                    return Pair.<EventHandler, Boolean>of(pending, true);
+                }
+                return Pair.<EventHandler, Boolean>of(this, true);
+            }};
+
+        final FlowContainer container = new FlowContainer("suspend");
+        final EventEngine engine = container.buildEventEngine(this._loop);
+        for (int idx = 0; idx < flows; idx++) {
+            final EventReceiver receiver = engine.create("suspend", handler);
+            receiver.acceptEvent("io");
+            for (int evt = 0; evt < eventsPerFlow; evt++) {
+                receiver.acceptEvent(new CountedEvent("data", pre, post));
+            }
+        }
+        suspended.await();
+
+        //  complete half of pending transitions concurrently with destroy
+        final Thread completer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (pendings) {
+                    for (int idx = 0; idx < pendings.size(); idx += 2) {
+                        pendings.get(idx).complete(handler);
+                    }
+                }
+            }});
+        completer.start();
+        final Iterator<FlowContext> iter = container.getAllFlowContext();
+        while (iter.hasNext()) {
+            ((FlowContextImpl)iter.next()).destroy(null, null);
+        }
+        completer.join();
+        synchronized (pendings) {
+            for (PendingTransition pending : pendings) {
+                pending.complete(handler);
+            }
+        }
+        waitForNoFlow(container);
+
+        check("destroyDuringSuspend",
+                0 == container.getFlowTotalCount() && pre.get() == post.get(),
+                "live=" + container.getFlowTotalCount() + ", pre=" + pre.get() + ", post=" + post.get());
+    }
+
+    private static void waitForNoFlow(final FlowContainer container) throws InterruptedException {
+        final long deadline = System.currentTimeMillis() + WAIT_MILLIS;
+        while (container.getFlowTotalCount() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(1L);
+        }
+        //  let owner of mailbox finish postprocess after flow removed
+        Thread.sleep(50L);
+    }
+
+    private void check(final String name, final boolean ok, final String detail) {
+        if (ok) {
+            LOG.info("{}: OK, {}", name, detail);
+            System.out.println(name + ": OK, " + detail);
+        }
+        else {
+            this._failed = true;
+            LOG.error("{}: FAIL, {}", name, detail);
+            System.out.println(name + ": FAIL, " + detail);
+        }
+    }
+
+    private static final int PRODUCERS = 4;
+    private static final long WAIT_MILLIS = 5000L;
+    private static final String EVENT = "tick";
+
+    private final ExecutorService _executor = Executors.newFixedThreadPool(PRODUCERS);
+    private final ScheduledExecutorService _timer = Executors.newSingleThreadScheduledExecutor();
+
+    private final ExectionLoop _loop = new ExectionLoop() {
+        @Override
+        public boolean inExectionLoop() {
+            return false;
+        }
+
+        @Override
+        public Detachable submit(final Runnable runnable) {
+            _executor.submit(runnable);
+            return new Detachable() {
+                @Override
+                public void detach() {
+                }};
+        }
+
+        @Override
+        public Detachable schedule(final Runnable runnable, final long delayMillis) {
+            final ScheduledFuture<?> future = _timer.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    _executor.submit(runnable);
+                }}, delayMillis, TimeUnit.MILLISECONDS);
+            return new Detachable() {
+                @Override
+                public void detach() {
+                    future.cancel(false);
+                }};
+        }};
+
+    private boolean _failed = false;
+}